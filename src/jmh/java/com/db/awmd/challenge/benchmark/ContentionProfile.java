@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How benchmark threads pick the accounts of a transfer.
+ */
+public enum ContentionProfile {
+
+    /** Any two distinct accounts. */
+    UNIFORM {
+        @Override
+        int from(int accounts, int thread, int threads) {
+            return ThreadLocalRandom.current().nextInt(accounts);
+        }
+
+        @Override
+        int to(int from, int accounts, int thread, int threads) {
+            return (from + 1 + ThreadLocalRandom.current().nextInt(accounts - 1)) % accounts;
+        }
+    },
+
+    /** Every transfer credits account 0, like a fee collector. */
+    HOT_SPOT {
+        @Override
+        int from(int accounts, int thread, int threads) {
+            return 1 + ThreadLocalRandom.current().nextInt(accounts - 1);
+        }
+
+        @Override
+        int to(int from, int accounts, int thread, int threads) {
+            return 0;
+        }
+    },
+
+    /** Each thread only moves funds within its own slice of accounts, so threads never share an account. */
+    DISJOINT {
+        @Override
+        int from(int accounts, int thread, int threads) {
+            final int slice = accounts / threads;
+            return thread * slice + ThreadLocalRandom.current().nextInt(slice);
+        }
+
+        @Override
+        int to(int from, int accounts, int thread, int threads) {
+            final int slice = accounts / threads;
+            final int offset = thread * slice;
+            return offset + (from - offset + 1) % slice;
+        }
+    };
+
+    abstract int from(int accounts, int thread, int threads);
+
+    abstract int to(int from, int accounts, int thread, int threads);
+
+    static String accountId(int index) {
+        return "Id-" + index;
+    }
+
+}
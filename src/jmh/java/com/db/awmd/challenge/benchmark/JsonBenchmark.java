@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Transfer transfer = new Transfer("Id-1", "Id-2", new BigDecimal("100.25"));
+    private final Account account = new Account("Id-1", new BigDecimal("1000.50"));
+
+    private final byte[] transferJson = "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":100.25}".getBytes();
+    private final byte[] accountJson = "{\"accountId\":\"Id-1\",\"balance\":1000.50}".getBytes();
+
+    @Benchmark
+    public Transfer readTransfer() throws IOException {
+        return objectMapper.readValue(transferJson, Transfer.class);
+    }
+
+    @Benchmark
+    public byte[] writeTransfer() throws IOException {
+        return objectMapper.writeValueAsBytes(transfer);
+    }
+
+    @Benchmark
+    public Account readAccount() throws IOException {
+        return objectMapper.readValue(accountJson, Account.class);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws IOException {
+        return objectMapper.writeValueAsBytes(account);
+    }
+
+}
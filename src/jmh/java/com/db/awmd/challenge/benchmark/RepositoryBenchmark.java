@@ -0,0 +1,73 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.repository.AccountDictionary;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final BigDecimal NEGATED_AMOUNT = AMOUNT.negate();
+
+    @Param({"UNIFORM", "HOT_SPOT", "DISJOINT"})
+    public ContentionProfile profile;
+
+    @Param({"1024"})
+    public int accounts;
+
+    private AccountDictionary accountDictionary;
+
+    private AccountsRepositoryInMemory accountsRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accountDictionary = new AccountDictionary();
+        accountsRepository = new AccountsRepositoryInMemory(accountDictionary);
+        for (int i = 0; i < accounts; i++) {
+            accountsRepository.createAccount(new Account(ContentionProfile.accountId(i), new BigDecimal("1000000000")));
+        }
+    }
+
+    @Benchmark
+    public boolean updateAccounts(ThreadParams threadParams) {
+        final int thread = threadParams.getThreadIndex();
+        final int threads = threadParams.getThreadCount();
+        final int from = profile.from(accounts, thread, threads);
+        final int to = profile.to(from, accounts, thread, threads);
+        return accountsRepository.updateAccounts(Arrays.asList(
+                new AccountUpdate(ContentionProfile.accountId(from), NEGATED_AMOUNT),
+                new AccountUpdate(ContentionProfile.accountId(to), AMOUNT)));
+    }
+
+    /**
+     * Reads by a freshly built id, as a request does, which looks the id up in the dictionary.
+     */
+    @Benchmark
+    public Account getAccountById(ThreadParams threadParams) {
+        final int from = profile.from(accounts, threadParams.getThreadIndex(), threadParams.getThreadCount());
+        return accountsRepository.getAccount(ContentionProfile.accountId(from));
+    }
+
+    /**
+     * Reads by a handle resolved once, as the service does after resolving it for the locks; the accounts were
+     * created in order, so account i has handle i.
+     */
+    @Benchmark
+    public Account getAccountByHandle(ThreadParams threadParams) {
+        final int from = profile.from(accounts, threadParams.getThreadIndex(), threadParams.getThreadCount());
+        return accountsRepository.getAccount(from, accountDictionary.accountIdOf(from));
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.AccountsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    @Param({"UNIFORM", "HOT_SPOT", "DISJOINT"})
+    public ContentionProfile profile;
+
+    @Param({"1024"})
+    public int accounts;
+
+    @Param({"in-memory", "fixed-point"})
+    public String repository;
+
+    private ConfigurableApplicationContext context;
+
+    private AccountsService accountsService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(DevChallengeApplication.class)
+                .web(false)
+                .properties("accounts.repository=" + repository,
+                        "notifications.overflow=DROP",
+                        // measure the locked path itself rather than admission refusals under HOT_SPOT
+                        "accounts.admission.max-in-flight=0",
+                        "accounts.admission.max-per-account=0",
+                        "logging.level.com.db.awmd=WARN")
+                .run();
+        accountsService = context.getBean(AccountsService.class);
+        for (int i = 0; i < accounts; i++) {
+            accountsService.createAccount(new Account(ContentionProfile.accountId(i), new BigDecimal("1000000000")));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void makeTransfer(ThreadParams threadParams) {
+        final int thread = threadParams.getThreadIndex();
+        final int threads = threadParams.getThreadCount();
+        final int from = profile.from(accounts, thread, threads);
+        final int to = profile.to(from, accounts, thread, threads);
+        accountsService.makeTransfer(new Transfer(ContentionProfile.accountId(from), ContentionProfile.accountId(to),
+                BigDecimal.ONE));
+    }
+
+}
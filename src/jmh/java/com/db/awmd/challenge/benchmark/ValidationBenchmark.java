@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import com.db.awmd.challenge.service.TransferValidationImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    private final TransferValidationImpl transferValidation = new TransferValidationImpl();
+
+    private final Account accountFrom = new Account("Id-1", new BigDecimal("1000.00"));
+    private final Account accountTo = new Account("Id-2", new BigDecimal("10.00"));
+
+    private final Transfer validTransfer = new Transfer("Id-1", "Id-2", new BigDecimal("100.00"));
+    private final Transfer overdraftTransfer = new Transfer("Id-2", "Id-1", new BigDecimal("100.00"));
+
+    @Benchmark
+    public void validTransfer() {
+        transferValidation.validate(accountFrom, accountTo, validTransfer);
+    }
+
+    @Benchmark
+    public Object rejectedTransfer() {
+        try {
+            transferValidation.validate(accountTo, accountFrom, overdraftTransfer);
+            return null;
+        } catch (NotEnoughBalanceException nbe) {
+            return nbe;
+        }
+    }
+
+}
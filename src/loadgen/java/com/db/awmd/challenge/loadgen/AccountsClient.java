@@ -0,0 +1,95 @@
+package com.db.awmd.challenge.loadgen;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Blocking client of the accounts API over {@link HttpURLConnection}, which keeps connections alive between calls
+ * as long as every response is read to the end.
+ */
+final class AccountsClient {
+
+    private static final TypeReference<List<Account>> ACCOUNTS = new TypeReference<List<Account>>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String baseUrl;
+
+    private final int timeoutMillis;
+
+    AccountsClient(String baseUrl, int timeoutMillis) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    int createAccount(String accountId, BigDecimal balance) throws IOException {
+        return send("POST", "/v1/accounts", objectMapper.writeValueAsBytes(new Account(accountId, balance)));
+    }
+
+    int transfer(String accountFromId, String accountToId, BigDecimal amount) throws IOException {
+        return send("PUT", "/v1/accounts/transfer",
+                objectMapper.writeValueAsBytes(new Transfer(accountFromId, accountToId, amount)));
+    }
+
+    List<Account> getAccounts(List<String> accountIds) throws IOException {
+        final HttpURLConnection connection = open("GET", "/v1/accounts?ids="
+                + URLEncoder.encode(String.join(",", accountIds), StandardCharsets.UTF_8.name()));
+        final int status = connection.getResponseCode();
+        final byte[] body = readFully(connection, status);
+        if (status != 200) {
+            throw new IOException("GET /v1/accounts answered " + status + ": " + new String(body, StandardCharsets.UTF_8));
+        }
+        return objectMapper.readValue(body, ACCOUNTS);
+    }
+
+    private int send(String method, String path, byte[] body) throws IOException {
+        final HttpURLConnection connection = open(method, path);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        final int status = connection.getResponseCode();
+        readFully(connection, status);
+        return status;
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        return connection;
+    }
+
+    private static byte[] readFully(HttpURLConnection connection, int status) throws IOException {
+        final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        try (InputStream body = in) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int read; (read = body.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.db.awmd.challenge.loadgen;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * Drives a running instance over HTTP: creates {@code accounts} accounts, sends transfers between them at a fixed
+ * arrival rate for {@code duration-seconds}, then checks that the balances of all created accounts still add up to
+ * what they were created with. Exits with status 1 if they do not.
+ * <p>
+ * Requests are issued open-loop: each one is due at a fixed point of the schedule and is sent as soon as a
+ * connection is free, however long earlier requests take, so the reported response times are what a client
+ * arriving at that rate would see. Run for hours with a long {@code duration-seconds} to soak-test.
+ */
+public class LoadGenerator {
+
+    private static final int CHECK_CHUNK = 200;
+
+    private final LoadOptions options;
+
+    private final AccountsClient client;
+
+    private final String[] accountIds;
+
+    public LoadGenerator(String[] args) {
+        this.options = LoadOptions.parse(args);
+        this.client = new AccountsClient(options.baseUrl, options.timeoutMillis);
+        final String prefix = "loadgen-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+        this.accountIds = new String[options.accounts];
+        for (int i = 0; i < accountIds.length; i++) {
+            accountIds[i] = prefix + i;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadGenerator loadGenerator = new LoadGenerator(args);
+        // keep a connection alive per thread instead of the default five
+        System.setProperty("http.maxConnections", String.valueOf(loadGenerator.options.threads));
+        System.exit(loadGenerator.run() ? 0 : 1);
+    }
+
+    public boolean run() throws InterruptedException, IOException {
+        System.out.println("Load run with " + options);
+
+        final OperationStats creations = new OperationStats("POST /v1/accounts");
+        creations.startMeasuring();
+        runOpenLoop(creations, options.createRate, accountIds.length, Long.MAX_VALUE, 0,
+                index -> () -> client.createAccount(accountIds[(int) index], options.initialBalance));
+        creations.printSummary(System.out);
+        System.out.println();
+
+        final ZipfSampler sampler = new ZipfSampler(accountIds.length, options.skew);
+        final OperationStats transfers = new OperationStats("PUT /v1/accounts/transfer");
+        runOpenLoop(transfers, options.rate, Long.MAX_VALUE, TimeUnit.SECONDS.toNanos(options.durationSeconds),
+                TimeUnit.SECONDS.toNanos(options.warmupSeconds), index -> () -> {
+                    final int from = sampler.next();
+                    final int to = sampler.nextExcept(from);
+                    final BigDecimal amount = BigDecimal.valueOf(1 + ThreadLocalRandom.current().nextInt(options.maxAmount));
+                    return client.transfer(accountIds[from], accountIds[to], amount);
+                });
+        transfers.printSummary(System.out);
+        System.out.println();
+
+        boolean conserved = checkConservation();
+        if (!conserved) {
+            // a transfer the client gave up on may still have been running on the server
+            Thread.sleep(options.timeoutMillis);
+            conserved = checkConservation();
+        }
+        return conserved;
+    }
+
+    /**
+     * Issues request {@code i} at {@code start + i / rate} until {@code count} requests were issued or the duration
+     * is over, then waits for all of them to complete.
+     */
+    private void runOpenLoop(OperationStats stats, double rate, long count, long durationNanos, long warmupNanos,
+                             LongFunction<OperationStats.Operation> operations) throws InterruptedException {
+        final ExecutorService senders = Executors.newFixedThreadPool(options.threads, daemon("loadgen-sender"));
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemon("loadgen-reporter"));
+        final long reportNanos = TimeUnit.SECONDS.toNanos(options.reportIntervalSeconds);
+        reporter.scheduleAtFixedRate(() -> System.out.println(stats.interval(reportNanos)),
+                reportNanos, reportNanos, TimeUnit.NANOSECONDS);
+
+        final long start = System.nanoTime();
+        boolean warm = warmupNanos == 0;
+        for (long i = 0; i < count; i++) {
+            final long intendedStart = start + (long) (i * 1e9 / rate);
+            if (intendedStart - start >= durationNanos) {
+                break;
+            }
+            if (!warm && intendedStart - start >= warmupNanos) {
+                stats.startMeasuring();
+                warm = true;
+            }
+            for (long wait; (wait = intendedStart - System.nanoTime()) > 0; ) {
+                LockSupport.parkNanos(wait);
+            }
+            final OperationStats.Operation operation = operations.apply(i);
+            senders.execute(() -> stats.call(intendedStart, operation));
+        }
+        if (!warm) {
+            stats.startMeasuring();
+        }
+
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.HOURS);
+        reporter.shutdownNow();
+    }
+
+    private boolean checkConservation() throws IOException {
+        BigDecimal total = BigDecimal.ZERO;
+        int found = 0;
+        final List<String> ids = Arrays.asList(accountIds);
+        for (int from = 0; from < ids.size(); from += CHECK_CHUNK) {
+            for (Account account : client.getAccounts(new ArrayList<>(ids.subList(from, Math.min(ids.size(), from + CHECK_CHUNK))))) {
+                total = total.add(account.getBalance());
+                found++;
+            }
+        }
+        final BigDecimal expected = options.initialBalance.multiply(BigDecimal.valueOf(found));
+        final boolean conserved = total.compareTo(expected) == 0;
+        System.out.printf("Balances of %d accounts sum to %s, expected %s: %s%n", found, total.toPlainString(),
+                expected.toPlainString(), conserved ? "conserved" : "NOT CONSERVED");
+        return conserved;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
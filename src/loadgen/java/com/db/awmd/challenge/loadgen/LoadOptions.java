@@ -0,0 +1,89 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load run, given as {@code --name=value} arguments; unknown names are rejected so a typo does not
+ * silently run with a default.
+ */
+final class LoadOptions {
+
+    final String baseUrl;
+
+    /** Accounts created before the transfers start. */
+    final int accounts;
+
+    final BigDecimal initialBalance;
+
+    /** Account creations per second while setting up. */
+    final double createRate;
+
+    /** Transfers per second, issued on schedule whether or not earlier ones have answered. */
+    final double rate;
+
+    final long durationSeconds;
+
+    /** Leading part of the transfer phase left out of the totals. */
+    final long warmupSeconds;
+
+    /** Zipf exponent of the account picked for either side of a transfer; 0 picks uniformly. */
+    final double skew;
+
+    final int maxAmount;
+
+    /** Connections, and so requests in flight, at most. */
+    final int threads;
+
+    final int timeoutMillis;
+
+    final long reportIntervalSeconds;
+
+    private LoadOptions(Map<String, String> values) {
+        baseUrl = take(values, "base-url", "http://localhost:18080");
+        accounts = Integer.parseInt(take(values, "accounts", "10000"));
+        initialBalance = new BigDecimal(take(values, "initial-balance", "1000"));
+        createRate = Double.parseDouble(take(values, "create-rate", "2000"));
+        rate = Double.parseDouble(take(values, "rate", "1000"));
+        durationSeconds = Long.parseLong(take(values, "duration-seconds", "60"));
+        warmupSeconds = Long.parseLong(take(values, "warmup-seconds", "10"));
+        skew = Double.parseDouble(take(values, "skew", "0"));
+        maxAmount = Integer.parseInt(take(values, "max-amount", "10"));
+        threads = Integer.parseInt(take(values, "threads", "64"));
+        timeoutMillis = Integer.parseInt(take(values, "timeout-ms", "10000"));
+        reportIntervalSeconds = Long.parseLong(take(values, "report-interval-seconds", "5"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+        if (accounts < 2 || rate <= 0 || createRate <= 0 || maxAmount < 1 || threads < 1) {
+            throw new IllegalArgumentException("Need at least 2 accounts, positive rates, max-amount and threads.");
+        }
+    }
+
+    static LoadOptions parse(String[] args) {
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new LoadOptions(values);
+    }
+
+    private static String take(Map<String, String> values, String name, String defaultValue) {
+        final String value = values.remove(name);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public String toString() {
+        return "base-url=" + baseUrl + " accounts=" + accounts + " initial-balance=" + initialBalance
+                + " create-rate=" + createRate + " rate=" + rate + " duration-seconds=" + durationSeconds
+                + " warmup-seconds=" + warmupSeconds + " skew=" + skew + " max-amount=" + maxAmount
+                + " threads=" + threads + " timeout-ms=" + timeoutMillis;
+    }
+
+}
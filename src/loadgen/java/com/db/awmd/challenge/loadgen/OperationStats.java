@@ -0,0 +1,129 @@
+package com.db.awmd.challenge.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of one kind of request.
+ * <p>
+ * Response time is measured from the moment the schedule intended to send the request, not from when a connection
+ * was free to send it, so a stalled server is charged for every request that piled up behind it instead of only the
+ * one it stalled on (coordinated omission). Service time, measured from the actual send, is kept alongside to show
+ * how much of the response time was spent waiting for a connection.
+ */
+final class OperationStats {
+
+    interface Operation {
+
+        /**
+         * Sends the request and returns the HTTP status of the response.
+         */
+        int call() throws IOException;
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final String name;
+
+    private final Recorder responseTime = new Recorder(3);
+
+    private final Recorder serviceTime = new Recorder(3);
+
+    private final Histogram totalResponseTime = new Histogram(3);
+
+    private final Histogram totalServiceTime = new Histogram(3);
+
+    private final Map<String, LongAdder> outcomes = new ConcurrentSkipListMap<>();
+
+    private Histogram intervalResponseTime;
+
+    private Histogram intervalServiceTime;
+
+    private volatile boolean measuring;
+
+    private long measuredSince;
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    void call(long intendedStart, Operation operation) {
+        final long sent = System.nanoTime();
+        String outcome;
+        try {
+            outcome = String.valueOf(operation.call());
+        } catch (IOException | RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+        }
+        final long completed = System.nanoTime();
+        responseTime.recordValue(completed - intendedStart);
+        serviceTime.recordValue(completed - sent);
+        if (measuring) {
+            outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Drops everything recorded so far, e.g. during warm-up, and counts from now on.
+     */
+    synchronized void startMeasuring() {
+        intervalResponseTime = responseTime.getIntervalHistogram(intervalResponseTime);
+        intervalServiceTime = serviceTime.getIntervalHistogram(intervalServiceTime);
+        outcomes.clear();
+        measuredSince = System.nanoTime();
+        measuring = true;
+    }
+
+    /**
+     * Returns a one-line summary of the requests completed since the previous interval.
+     */
+    synchronized String interval(long intervalNanos) {
+        intervalResponseTime = responseTime.getIntervalHistogram(intervalResponseTime);
+        intervalServiceTime = serviceTime.getIntervalHistogram(intervalServiceTime);
+        if (measuring) {
+            totalResponseTime.add(intervalResponseTime);
+            totalServiceTime.add(intervalServiceTime);
+        }
+        return String.format("%s%s: %8.0f req/s, response time p50 %s p99 %s max %s", name,
+                measuring ? "" : " (warm-up)",
+                intervalResponseTime.getTotalCount() * 1e9 / intervalNanos,
+                millis(intervalResponseTime.getValueAtPercentile(50)),
+                millis(intervalResponseTime.getValueAtPercentile(99)),
+                millis(intervalResponseTime.getMaxValue()));
+    }
+
+    synchronized void printSummary(PrintStream out) {
+        final long measuredNanos = System.nanoTime() - measuredSince;
+        interval(measuredNanos);
+        out.println();
+        out.printf("%s: %d requests in %.1f s, %.0f req/s%n", name, totalResponseTime.getTotalCount(),
+                measuredNanos / 1e9, totalResponseTime.getTotalCount() * 1e9 / measuredNanos);
+        printPercentiles(out, "response time", totalResponseTime);
+        printPercentiles(out, "service time ", totalServiceTime);
+        for (Map.Entry<String, LongAdder> outcome : outcomes.entrySet()) {
+            out.printf("  %-24s %d%n", outcome.getKey(), outcome.getValue().sum());
+        }
+    }
+
+    private static void printPercentiles(PrintStream out, String label, Histogram histogram) {
+        final StringBuilder line = new StringBuilder("  ").append(label);
+        for (double percentile : PERCENTILES) {
+            line.append("  p").append(percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile))
+                    .append(' ').append(millis(histogram.getValueAtPercentile(percentile)));
+        }
+        line.append("  max ").append(millis(histogram.getMaxValue()));
+        out.println(line);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+}
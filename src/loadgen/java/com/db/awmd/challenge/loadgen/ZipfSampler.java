@@ -0,0 +1,42 @@
+package com.db.awmd.challenge.loadgen;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks indexes in {@code [0, n)} with probability proportional to {@code 1 / (index + 1)^skew}, so a skew of 0 is
+ * uniform and around 1 sends most of the traffic to the first few accounts.
+ */
+final class ZipfSampler {
+
+    private final double[] cumulative;
+
+    ZipfSampler(int n, double skew) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    int next() {
+        final int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    /**
+     * Like {@link #next()}, but never {@code excluded}.
+     */
+    int nextExcept(int excluded) {
+        int index;
+        do {
+            index = next();
+        } while (index == excluded);
+        return index;
+    }
+
+}
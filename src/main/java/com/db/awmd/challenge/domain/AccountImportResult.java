@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Only the first errors are listed; {@code rejected} counts all of them.
+ */
+@Data
+public class AccountImportResult {
+
+    private final long imported;
+    private final long rejected;
+    private final List<AccountImportError> errors;
+
+}
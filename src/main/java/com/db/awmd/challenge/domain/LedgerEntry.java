@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One side of a transfer in an account's ledger; the amount is negative for debits.
+ */
+@Data
+public class LedgerEntry {
+
+    private final long transferId;
+    private final long timestamp;
+    private final String counterpartyId;
+    private final BigDecimal amount;
+
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Ledger entries, newest first. {@code nextCursor} continues with older entries and is null on the last page.
+ */
+@Data
+public class LedgerPage {
+
+    private final List<LedgerEntry> entries;
+    private final Long nextCursor;
+
+}
@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Moves funds between several accounts at once, e.g. one debit split over several credits. The legs must sum to
+ * zero, and are applied all together or not at all.
+ */
+@Data
+public class MultiLegTransfer {
+
+    public static final int MAX_LEGS = 1000;
+
+    @NotNull
+    @Size(min = 2, max = MAX_LEGS, message = "Multi-leg transfer must have between 2 and " + MAX_LEGS + " legs.")
+    @Valid
+    private final List<TransferLeg> legs;
+
+    @JsonCreator
+    public MultiLegTransfer(@JsonProperty("legs") List<TransferLeg> legs) {
+        this.legs = legs;
+    }
+
+}
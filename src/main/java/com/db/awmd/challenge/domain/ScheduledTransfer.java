@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A transfer to be made once {@code executeAt}, in epoch milliseconds, has passed. The id is assigned when the
+ * transfer is scheduled; a request without {@code executeAt} reads it as 0 and is refused.
+ */
+@Data
+public class ScheduledTransfer {
+
+    private final long id;
+
+    @NotNull
+    @Valid
+    private final Transfer transfer;
+
+    @Min(value = 1, message = "Scheduled transfer needs a positive executeAt in epoch milliseconds.")
+    private final long executeAt;
+
+    @JsonCreator
+    public ScheduledTransfer(@JsonProperty("transfer") Transfer transfer,
+                             @JsonProperty("executeAt") long executeAt) {
+        this(0, transfer, executeAt);
+    }
+
+    public ScheduledTransfer(long id, Transfer transfer, long executeAt) {
+        this.id = id;
+        this.transfer = transfer;
+        this.executeAt = executeAt;
+    }
+
+}
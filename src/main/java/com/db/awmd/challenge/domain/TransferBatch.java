@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+public class TransferBatch {
+
+    public static final int MAX_TRANSFERS = 10000;
+
+    @NotNull
+    @NotEmpty
+    @Size(max = MAX_TRANSFERS, message = "Transfer batch must not exceed " + MAX_TRANSFERS + " transfers.")
+    @Valid
+    private final List<Transfer> transfers;
+
+    @JsonCreator
+    public TransferBatch(@JsonProperty("transfers") List<Transfer> transfers) {
+        this.transfers = transfers;
+    }
+
+}
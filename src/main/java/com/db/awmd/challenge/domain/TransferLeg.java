@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+
+/**
+ * One account's share of a {@link MultiLegTransfer}: negative amounts are debits, positive ones credits.
+ */
+@Data
+public class TransferLeg {
+
+    @NotNull
+    @NotEmpty
+    private final String accountId;
+
+    @NotNull
+    private final BigDecimal amount;
+
+    @JsonCreator
+    public TransferLeg(@JsonProperty("accountId") String accountId,
+                       @JsonProperty("amount") BigDecimal amount) {
+        this.accountId = accountId;
+        this.amount = amount;
+    }
+
+}
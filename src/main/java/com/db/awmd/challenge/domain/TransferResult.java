@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class TransferResult {
+
+    private final String accountFromId;
+    private final String accountToId;
+    private final BigDecimal balance;
+    private final TransferStatus status;
+    private final String message;
+
+    public static TransferResult completed(Transfer transfer) {
+        return new TransferResult(transfer.getAccountFromId(), transfer.getAccountToId(), transfer.getBalance(),
+                TransferStatus.COMPLETED, null);
+    }
+
+    public static TransferResult rejected(Transfer transfer, TransferStatus status, String message) {
+        return new TransferResult(transfer.getAccountFromId(), transfer.getAccountToId(), transfer.getBalance(),
+                status, message);
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.domain;
+
+public enum TransferStatus {
+
+    COMPLETED,
+    ACCOUNT_NOT_FOUND,
+    NOT_ENOUGH_BALANCE,
+    SAME_ACCOUNT,
+    INVALID_AMOUNT
+
+}
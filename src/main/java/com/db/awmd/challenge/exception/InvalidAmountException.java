@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidAmountException extends RuntimeException {
+
+    public InvalidAmountException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class MultiLegNotSupportedException extends RuntimeException {
+
+    public MultiLegNotSupportedException(String message){
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.exception;
+
+public class UnbalancedTransferException extends RuntimeException {
+
+    public UnbalancedTransferException(String message){
+        super(message);
+    }
+
+}
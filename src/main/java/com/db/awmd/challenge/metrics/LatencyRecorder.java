@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution backed by an HdrHistogram {@link Recorder}: recording is wait-free, and readers fold the
+ * recorded interval into a cumulative histogram.
+ */
+public class LatencyRecorder {
+
+    private final Recorder recorder = new Recorder(3);
+
+    private final Histogram total = new Histogram(3);
+
+    private Histogram interval;
+
+    public void record(long nanos) {
+        recorder.recordValue(Math.max(0, nanos));
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total.getTotalCount());
+        snapshot.put("p50", micros(total.getValueAtPercentile(50)));
+        snapshot.put("p99", micros(total.getValueAtPercentile(99)));
+        snapshot.put("p999", micros(total.getValueAtPercentile(99.9)));
+        snapshot.put("max", micros(total.getMaxValue()));
+        snapshot.put("unit", "us");
+        return snapshot;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+}
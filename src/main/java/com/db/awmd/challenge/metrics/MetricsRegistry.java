@@ -0,0 +1,52 @@
+package com.db.awmd.challenge.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named latency timers, counters and gauges, created on first use and shared by name.
+ */
+@Component
+public class MetricsRegistry {
+
+    private final ConcurrentMap<String, LatencyRecorder> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public LatencyRecorder timer(String name) {
+        return timers.computeIfAbsent(name, key -> new LatencyRecorder());
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> timerValues = new TreeMap<>();
+        timers.forEach((name, timer) -> timerValues.put(name, timer.snapshot()));
+        final Map<String, Object> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        final Map<String, Object> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.getAsLong()));
+
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("timers", timerValues);
+        snapshot.put("counters", counterValues);
+        snapshot.put("gauges", gaugeValues);
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.repository;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Assigns every account id a dense int handle, counting from 0, the first time the id is registered, so that the
+ * layers below the REST edge can order, stripe and index accounts by an int instead of hashing and comparing ids.
+ * <p>
+ * Handles are never reused: clearing the accounts keeps the dictionary, and an id created again gets its previous
+ * handle back. The reverse mapping is kept in fixed-size chunks, so it grows without copying.
+ */
+@Component
+public class AccountDictionary {
+
+    public static final int UNKNOWN = -1;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<String[]> accountIds = new AtomicReferenceArray<>(1 << (31 - CHUNK_BITS));
+
+    private final AtomicInteger nextHandle = new AtomicInteger();
+
+    /**
+     * Returns the handle of the id, assigning the next free one if the id is new.
+     */
+    public int register(String accountId) {
+        final Integer handle = handles.get(accountId);
+        if (handle != null) {
+            return handle;
+        }
+        return handles.computeIfAbsent(accountId, id -> {
+            final int assigned = nextHandle.getAndIncrement();
+            if (assigned < 0) {
+                throw new IllegalStateException("Account handles exhausted.");
+            }
+            chunkOf(assigned)[assigned & CHUNK_MASK] = id;
+            return assigned;
+        });
+    }
+
+    /**
+     * Returns the handle of the id, or {@link #UNKNOWN} if it was never registered.
+     */
+    public int handleOf(String accountId) {
+        final Integer handle = handles.get(accountId);
+        return handle == null ? UNKNOWN : handle;
+    }
+
+    /**
+     * Returns the id of a handle obtained from this dictionary.
+     */
+    public String accountIdOf(int handle) {
+        return accountIds.get(handle >>> CHUNK_BITS)[handle & CHUNK_MASK];
+    }
+
+    public int size() {
+        return handles.size();
+    }
+
+    private String[] chunkOf(int handle) {
+        final int index = handle >>> CHUNK_BITS;
+        final String[] chunk = accountIds.get(index);
+        if (chunk != null) {
+            return chunk;
+        }
+        accountIds.compareAndSet(index, null, new String[CHUNK_MASK + 1]);
+        return accountIds.get(index);
+    }
+
+}
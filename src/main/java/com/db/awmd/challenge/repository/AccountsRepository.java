@@ -3,17 +3,76 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.AccountUpdate;
 import com.db.awmd.challenge.exception.DuplicateAccountException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountException;
 
+  /**
+   * Creates the accounts in order and returns why each account that was not created was refused, by position:
+   * duplicates, and balances the repository cannot represent.
+   */
+  default Map<Integer, String> createAccounts(List<Account> accounts) {
+    Map<Integer, String> refused = new HashMap<>();
+    for (int i = 0; i < accounts.size(); i++) {
+      try {
+        createAccount(accounts.get(i));
+      } catch (DuplicateAccountException | InvalidAmountException ex) {
+        refused.put(i, ex.getMessage());
+      }
+    }
+    return refused;
+  }
+
   Account getAccount(String accountId);
 
+  /**
+   * Reads the account behind a handle of the shared {@link AccountDictionary}; repositories storing accounts by handle
+   * skip the lookup of the id.
+   */
+  default Account getAccount(int handle, String accountId) {
+    return getAccount(accountId);
+  }
+
+  /**
+   * Returns the existing accounts among the ids, in order. Repositories keeping versions read them all at once.
+   */
+  default List<Account> getAccounts(List<String> accountIds) {
+    List<Account> accounts = new ArrayList<>(accountIds.size());
+    for (String accountId : accountIds) {
+      Account account = getAccount(accountId);
+      if (account != null) {
+        accounts.add(account);
+      }
+    }
+    return accounts;
+  }
+
   void clearAccounts();
 
+  /**
+   * Hands every account to the sink one at a time, without collecting them first.
+   */
+  void exportAccounts(Consumer<Account> sink);
+
+  /**
+   * Adds each update's balance to its account as one transaction, skipping accounts that do not exist. Callers must
+   * hold the locks of the updated accounts and have validated the resulting balances; repositories keeping versions
+   * make all of the updates visible at once.
+   */
   boolean updateAccounts(List<AccountUpdate> accountUpdates);
 
+  /**
+   * Blocks until the changes made by the calling thread survive a restart. A no-op for volatile repositories.
+   */
+  default void awaitDurability() {
+  }
+
 }
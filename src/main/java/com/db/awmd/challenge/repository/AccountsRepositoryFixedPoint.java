@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every balance as a count of minor units (balance * 10^scale) in an {@link AtomicLong}, so debits and
+ * credits are CAS operations instead of {@link BigDecimal} arithmetic under the account locks.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "fixed-point")
+public class AccountsRepositoryFixedPoint implements AtomicTransferRepository {
+
+    private final Map<String, AtomicLong> balances = new ConcurrentHashMap<>();
+
+    private final int scale;
+
+    @Autowired
+    public AccountsRepositoryFixedPoint(@Value("${accounts.balance-scale:2}") int scale) {
+        this.scale = scale;
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountException {
+        AtomicLong previousBalance = balances.putIfAbsent(account.getAccountId(),
+                new AtomicLong(toMinorUnits(account.getBalance())));
+        if (previousBalance != null) {
+            throw new DuplicateAccountException(
+                    "Provided Account Id " + account.getAccountId() + " is already exists into system.");
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        AtomicLong balance = balances.get(accountId);
+        return balance == null ? null : new Account(accountId, toBalance(balance.get()));
+    }
+
+    @Override
+    public void clearAccounts() {
+        balances.clear();
+    }
+
+    /**
+     * Weakly consistent: balances are read one by one while transfers continue, so a concurrent transfer may be
+     * seen on one side only.
+     */
+    @Override
+    public void exportAccounts(Consumer<Account> sink) {
+        balances.forEach((accountId, balance) -> sink.accept(new Account(accountId, toBalance(balance.get()))));
+    }
+
+    /**
+     * Refuses the whole batch with an {@link InvalidAmountException}, returning the updates already added, if one
+     * would take a balance beyond the range of a long.
+     */
+    @Override
+    public boolean updateAccounts(List<AccountUpdate> accountUpdates) {
+        final AtomicLong[] updated = new AtomicLong[accountUpdates.size()];
+        final long[] units = new long[accountUpdates.size()];
+        for (int i = 0; i < accountUpdates.size(); i++) {
+            final AccountUpdate accountUpdate = accountUpdates.get(i);
+            final AtomicLong balance = balances.get(accountUpdate.getAccountId());
+            if (balance == null) {
+                continue;
+            }
+            units[i] = toMinorUnits(accountUpdate.getBalance());
+            if (!tryAdd(balance, units[i])) {
+                for (int j = 0; j < i; j++) {
+                    if (updated[j] != null) {
+                        updated[j].addAndGet(-units[j]);
+                    }
+                }
+                throw overflow(accountUpdate.getAccountId());
+            }
+            updated[i] = balance;
+        }
+        return true;
+    }
+
+    @Override
+    public void transfer(String accountFromId, String accountToId, BigDecimal amount)
+            throws AccountNotFoundException, NotEnoughBalanceException, InvalidAmountException {
+        final AtomicLong balanceFrom = findBalance(accountFromId);
+        final AtomicLong balanceTo = findBalance(accountToId);
+        final long units = toMinorUnits(amount);
+
+        long current;
+        do {
+            current = balanceFrom.get();
+            if (current < units) {
+                throw new NotEnoughBalanceException("Not enough balance in account " + accountFromId
+                        + " balance=" + toBalance(current));
+            }
+        } while (!balanceFrom.compareAndSet(current, current - units));
+
+        if (!tryAdd(balanceTo, units)) {
+            balanceFrom.addAndGet(units);
+            throw overflow(accountToId);
+        }
+    }
+
+    /**
+     * Takes the debits first, each with its own CAS, and returns those already taken if a later one fails; the
+     * credits follow once every debit has succeeded, and everything is returned if one of them would overflow. Readers
+     * may see the debits before the credits, as they may for a single transfer.
+     */
+    @Override
+    public void transfer(List<AccountUpdate> legs)
+            throws AccountNotFoundException, NotEnoughBalanceException, InvalidAmountException {
+        final AtomicLong[] legBalances = new AtomicLong[legs.size()];
+        final long[] units = new long[legs.size()];
+        for (int i = 0; i < legs.size(); i++) {
+            legBalances[i] = findBalance(legs.get(i).getAccountId());
+            units[i] = toMinorUnits(legs.get(i).getBalance());
+        }
+
+        for (int i = 0; i < legs.size(); i++) {
+            if (units[i] >= 0) {
+                continue;
+            }
+            long current;
+            do {
+                current = legBalances[i].get();
+                if (current + units[i] < 0) {
+                    for (int j = 0; j < i; j++) {
+                        if (units[j] < 0) {
+                            legBalances[j].addAndGet(-units[j]);
+                        }
+                    }
+                    throw new NotEnoughBalanceException("Not enough balance in account " + legs.get(i).getAccountId()
+                            + " balance=" + toBalance(current));
+                }
+            } while (!legBalances[i].compareAndSet(current, current + units[i]));
+        }
+        for (int i = 0; i < legs.size(); i++) {
+            if (units[i] > 0 && !tryAdd(legBalances[i], units[i])) {
+                for (int j = 0; j < legs.size(); j++) {
+                    if (j < i || units[j] < 0) {
+                        legBalances[j].addAndGet(-units[j]);
+                    }
+                }
+                throw overflow(legs.get(i).getAccountId());
+            }
+        }
+    }
+
+    /**
+     * Adds the units with a CAS loop, like debits are taken, leaving the balance unchanged if the sum would not fit
+     * in a long.
+     */
+    private static boolean tryAdd(AtomicLong balance, long units) {
+        long current;
+        long updated;
+        do {
+            current = balance.get();
+            try {
+                updated = Math.addExact(current, units);
+            } catch (ArithmeticException ex) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, updated));
+        return true;
+    }
+
+    private InvalidAmountException overflow(String accountId) {
+        return new InvalidAmountException("Balance of account " + accountId + " cannot exceed "
+                + toBalance(Long.MAX_VALUE) + ".");
+    }
+
+    private AtomicLong findBalance(String accountId) {
+        AtomicLong balance = balances.get(accountId);
+        if (balance == null) {
+            throw new AccountNotFoundException("Account " + accountId + " not found.");
+        }
+        return balance;
+    }
+
+    private long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.movePointRight(scale).longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new InvalidAmountException("Amount " + amount + " cannot be represented with " + scale + " decimal places.");
+        }
+    }
+
+    private BigDecimal toBalance(long units) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+}
@@ -3,51 +3,481 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.AccountUpdate;
 import com.db.awmd.challenge.exception.DuplicateAccountException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
+/**
+ * Keeps every balance as a chain of immutable versions (see {@link BalanceVersions}), so reads never lock and never
+ * observe half of a transfer, and a multi-account read or an export sees all accounts at one commit timestamp.
+ * Changes are made by installing new versions; callers must hold the locks of the accounts they update.
+ * <p>
+ * The chains are stored in chunked arrays indexed by the {@link AccountDictionary} handle of the account, which the
+ * repository registers when the account is created. Callers holding a handle read without looking the id up.
+ */
 @Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    /**
+     * Told about every committed change, inside the commit and under the locks of the changed accounts, so changes
+     * of one account arrive in commit order. Balances are the resulting ones, not deltas. Must not block.
+     */
+    public interface ChangeListener {
 
+        void onCreate(Account account);
+
+        void onUpdate(List<Account> accounts);
+
+        void onClear();
+    }
+
+    /** Batches up to this size find repeated accounts by scanning instead of through a map. */
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int CREATE_STRIPES = 64;
+
+    private final AccountDictionary accountDictionary;
+
+    /** Chains by handle, in chunks allocated on first use. */
+    private final AtomicReferenceArray<AtomicReferenceArray<BalanceVersions.Chain>> chains =
+            new AtomicReferenceArray<>(1 << (31 - CHUNK_BITS));
+
+    /** One more than the highest chunk allocated so far. */
+    private final AtomicInteger chunkLimit = new AtomicInteger();
+
+    /** Creations of accounts sharing a stripe are serialized, so a creation is journaled at most once. */
+    private final Object[] createLocks = new Object[CREATE_STRIPES];
+
+    private final CommitBarrier commitBarrier = new CommitBarrier();
+
+    private final BalanceVersions versions = new BalanceVersions();
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Autowired(required = false)
+    private TransactionJournal journal;
+
+    @Autowired(required = false)
+    private AccountsSnapshotStore snapshotStore;
+
+    public AccountsRepositoryInMemory() {
+        this(new AccountDictionary());
+    }
+
+    @Autowired
+    public AccountsRepositoryInMemory(AccountDictionary accountDictionary) {
+        this.accountDictionary = accountDictionary;
+        for (int i = 0; i < CREATE_STRIPES; i++) {
+            createLocks[i] = new Object();
+        }
+    }
+
+    AccountsRepositoryInMemory(TransactionJournal journal, AccountsSnapshotStore snapshotStore) {
+        this();
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+    }
+
+    @PostConstruct
+    public void recover() {
+        if (journal != null) {
+            final JournalReplay replay = new JournalReplay();
+            final long snapshotSequence = snapshotStore == null ? 0 : snapshotStore.load(replay);
+            journal.recover(snapshotSequence, replay);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all accounts while transfers keep running. Writers are only held back for the moment it
+     * takes to read the journal position and open a read timestamp at it, so the snapshot holds exactly the changes
+     * up to that position; later changes are replayed from the journal on recovery. The snapshot is published once
+     * every change it holds is durable.
+     */
+    public void snapshot() {
+        if (journal == null || snapshotStore == null) {
+            return;
+        }
+        final long[] readTimestamp = new long[1];
+        final long sequence = commitBarrier.exclusive(() -> {
+            readTimestamp[0] = versions.openSnapshot();
+            return journal.getAppendedSequence();
+        });
+        try {
+            snapshotStore.write(sequence, () -> accountsAt(readTimestamp[0]), () -> journal.awaitDurable(sequence));
+        } finally {
+            versions.closeSnapshot(readTimestamp[0]);
+        }
+        journal.deleteSegmentsUpTo(snapshotStore.getOldestRetainedSequence());
+    }
+
+    /**
+     * Registers the listener for every change committed from now on, then hands the accounts as they were at that
+     * moment to {@code snapshot}. Applying the snapshot followed by the changes reproduces this repository; writers
+     * are only held back while the listener is registered.
+     */
+    public void addListener(ChangeListener listener, Consumer<Account> snapshot) {
+        final long readTimestamp = commitBarrier.exclusive(() -> {
+            listeners.add(listener);
+            return versions.openSnapshot();
+        });
+        try {
+            final Iterator<Account> accountsAtRegistration = accountsAt(readTimestamp);
+            while (accountsAtRegistration.hasNext()) {
+                snapshot.accept(accountsAtRegistration.next());
+            }
+        } finally {
+            versions.closeSnapshot(readTimestamp);
+        }
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers the id in the dictionary, if it is new, and stores the account under its handle. Only duplicates are
+     * refused, and their id is registered already.
+     */
     @Override
     public void createAccount(Account account) throws DuplicateAccountException {
-        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-        if (previousAccount != null) {
+        final String accountId = account.getAccountId();
+        final int handle = accountDictionary.register(accountId);
+        boolean created = false;
+        final int stripe = commitBarrier.enter();
+        try {
+            // journaled before the chain is visible, so that no update to this account can be journaled first
+            synchronized (createLocks[handle & (CREATE_STRIPES - 1)]) {
+                final AtomicReferenceArray<BalanceVersions.Chain> chunk = chunkOf(handle);
+                if (chunk.get(handle & CHUNK_MASK) == null) {
+                    if (journal != null) {
+                        journal.appendCreate(account);
+                    }
+                    final BalanceVersions.Commit commit = versions.begin();
+                    final BalanceVersions.Chain chain = versions.create(accountId, account.getBalance(), commit);
+                    versions.publish(commit);
+                    for (ChangeListener listener : listeners) {
+                        listener.onCreate(new Account(accountId, account.getBalance()));
+                    }
+                    chunk.set(handle & CHUNK_MASK, chain);
+                    created = true;
+                }
+            }
+        } finally {
+            commitBarrier.exit(stripe);
+        }
+        if (!created) {
             throw new DuplicateAccountException(
-                    "Provided Account Id " + account.getAccountId() + " is already exists into system.");
+                    "Provided Account Id " + accountId + " is already exists into system.");
         }
     }
 
+    /**
+     * Returns a copy of the newest committed balance; the account itself is never handed out.
+     */
     @Override
     public Account getAccount(String accountId) {
-        return accounts.get(accountId);
+        return getAccount(accountDictionary.handleOf(accountId), accountId);
+    }
+
+    /**
+     * Reads the account by its handle, which must come from the dictionary this repository was built with.
+     */
+    @Override
+    public Account getAccount(int handle, String accountId) {
+        final BalanceVersions.Chain chain = chainOf(handle);
+        if (chain == null) {
+            return null;
+        }
+        BalanceVersions.Version version;
+        do {
+            version = versions.visibleAt(chain, versions.readTimestamp());
+        } while (version == BalanceVersions.TRUNCATED);
+        return version == null ? null : new Account(accountId, version.balance);
+    }
+
+    /**
+     * Reads every account at one read timestamp, starting over at a newer one if a version it needs is cut off.
+     */
+    @Override
+    public List<Account> getAccounts(List<String> accountIds) {
+        final List<Account> result = new ArrayList<>(accountIds.size());
+        read:
+        while (true) {
+            result.clear();
+            final long readTimestamp = versions.readTimestamp();
+            for (String accountId : accountIds) {
+                final BalanceVersions.Chain chain = chainOf(accountDictionary.handleOf(accountId));
+                final BalanceVersions.Version version = chain == null ? null : versions.visibleAt(chain, readTimestamp);
+                if (version == BalanceVersions.TRUNCATED) {
+                    continue read;
+                }
+                if (version != null) {
+                    result.add(new Account(accountId, version.balance));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Streams the balances as of the moment the export starts. Writers are only held back while the export opens
+     * its read timestamp; accounts created later are skipped.
+     */
+    @Override
+    public void exportAccounts(Consumer<Account> sink) {
+        final long readTimestamp = commitBarrier.exclusive(versions::openSnapshot);
+        try {
+            final Iterator<Account> exported = accountsAt(readTimestamp);
+            while (exported.hasNext()) {
+                sink.accept(exported.next());
+            }
+        } finally {
+            versions.closeSnapshot(readTimestamp);
+        }
     }
 
     @Override
     public void clearAccounts() {
-        accounts.clear();
+        final int stripe = commitBarrier.enter();
+        try {
+            if (journal != null) {
+                journal.appendClear();
+            }
+            clearChains();
+            for (ChangeListener listener : listeners) {
+                listener.onClear();
+            }
+        } finally {
+            commitBarrier.exit(stripe);
+        }
     }
 
+    /**
+     * Installs the resulting balances under one commit, so readers see all of them or none. With a journal
+     * configured, they are journaled first.
+     */
     @Override
     public boolean updateAccounts(List<AccountUpdate> accountUpdates) {
-        accountUpdates
-                .stream()
-                .forEach(this::updateAccount);
-
+        final int stripe = commitBarrier.enter();
+        try {
+            final List<BalanceVersions.Chain> updatedAccounts = new ArrayList<>(accountUpdates.size());
+            final List<BigDecimal> balances = new ArrayList<>(accountUpdates.size());
+            final Map<BalanceVersions.Chain, Integer> positions = accountUpdates.size() > LINEAR_SCAN_LIMIT
+                    ? new IdentityHashMap<>(accountUpdates.size()) : null;
+            for (AccountUpdate accountUpdate : accountUpdates) {
+                final BalanceVersions.Chain chain = chainOf(accountDictionary.handleOf(accountUpdate.getAccountId()));
+                if (chain == null) {
+                    continue;
+                }
+                final int previous = positions == null
+                        ? updatedAccounts.indexOf(chain)
+                        : positions.getOrDefault(chain, -1);
+                if (previous < 0) {
+                    if (positions != null) {
+                        positions.put(chain, updatedAccounts.size());
+                    }
+                    updatedAccounts.add(chain);
+                    balances.add(chain.latest().add(accountUpdate.getBalance()));
+                } else {
+                    balances.set(previous, balances.get(previous).add(accountUpdate.getBalance()));
+                }
+            }
+            commit(updatedAccounts, balances);
+        } finally {
+            commitBarrier.exit(stripe);
+        }
         return true;
     }
 
-    private void updateAccount(final AccountUpdate accountUpdate) {
-        final String accountId = accountUpdate.getAccountId();
-        accounts.computeIfPresent(accountId, (key, account) -> {
-            account.setBalance(account.getBalance().add(accountUpdate.getBalance()));
-            return account;
-        });
+    /**
+     * Creates or replaces an account with a balance received from a replication primary. The replication thread must
+     * be the only writer of this repository.
+     */
+    void applyReplicatedCreate(Account account) {
+        final int stripe = commitBarrier.enter();
+        try {
+            if (journal != null) {
+                journal.appendCreate(account);
+            }
+            final int handle = accountDictionary.register(account.getAccountId());
+            final BalanceVersions.Commit commit = versions.begin();
+            chunkOf(handle).set(handle & CHUNK_MASK,
+                    versions.create(account.getAccountId(), account.getBalance(), commit));
+            versions.publish(commit);
+            for (ChangeListener listener : listeners) {
+                listener.onCreate(new Account(account.getAccountId(), account.getBalance()));
+            }
+        } finally {
+            commitBarrier.exit(stripe);
+        }
+    }
+
+    /**
+     * Installs the resulting balances of one commit of a replication primary under one commit here.
+     */
+    void applyReplicatedUpdate(List<Account> updated) {
+        final int stripe = commitBarrier.enter();
+        try {
+            final List<BalanceVersions.Chain> updatedAccounts = new ArrayList<>(updated.size());
+            final List<BigDecimal> balances = new ArrayList<>(updated.size());
+            for (Account account : updated) {
+                final BalanceVersions.Chain chain = chainOf(accountDictionary.handleOf(account.getAccountId()));
+                if (chain != null) {
+                    updatedAccounts.add(chain);
+                    balances.add(account.getBalance());
+                }
+            }
+            commit(updatedAccounts, balances);
+        } finally {
+            commitBarrier.exit(stripe);
+        }
+    }
+
+    /**
+     * Journals the balances, installs them under one commit and tells the listeners. Must run inside the commit
+     * barrier.
+     */
+    private void commit(List<BalanceVersions.Chain> updatedAccounts, List<BigDecimal> balances) {
+        if (updatedAccounts.isEmpty()) {
+            return;
+        }
+        List<Account> updated = Collections.emptyList();
+        if (journal != null || !listeners.isEmpty()) {
+            updated = new ArrayList<>(updatedAccounts.size());
+            for (int i = 0; i < updatedAccounts.size(); i++) {
+                updated.add(new Account(updatedAccounts.get(i).accountId, balances.get(i)));
+            }
+        }
+        if (journal != null) {
+            journal.appendUpdate(updated, balances);
+        }
+        final BalanceVersions.Commit commit = versions.begin();
+        for (int i = 0; i < updatedAccounts.size(); i++) {
+            versions.install(updatedAccounts.get(i), balances.get(i), commit);
+        }
+        versions.publish(commit);
+        for (ChangeListener listener : listeners) {
+            listener.onUpdate(updated);
+        }
+    }
+
+    @Override
+    public void awaitDurability() {
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+    }
+
+    private BalanceVersions.Chain chainOf(int handle) {
+        if (handle < 0) {
+            return null;
+        }
+        final AtomicReferenceArray<BalanceVersions.Chain> chunk = chains.get(handle >>> CHUNK_BITS);
+        return chunk == null ? null : chunk.get(handle & CHUNK_MASK);
+    }
+
+    private AtomicReferenceArray<BalanceVersions.Chain> chunkOf(int handle) {
+        final int index = handle >>> CHUNK_BITS;
+        final AtomicReferenceArray<BalanceVersions.Chain> chunk = chains.get(index);
+        if (chunk != null) {
+            return chunk;
+        }
+        chains.compareAndSet(index, null, new AtomicReferenceArray<>(CHUNK_MASK + 1));
+        chunkLimit.accumulateAndGet(index + 1, Math::max);
+        return chains.get(index);
+    }
+
+    private void clearChains() {
+        for (int i = 0; i < chunkLimit.get(); i++) {
+            final AtomicReferenceArray<BalanceVersions.Chain> chunk = chains.get(i);
+            for (int slot = 0; chunk != null && slot < chunk.length(); slot++) {
+                chunk.lazySet(slot, null);
+            }
+        }
+    }
+
+    /**
+     * Walks the accounts in handle order as of the read timestamp, which must stay open while the walk runs.
+     */
+    private Iterator<Account> accountsAt(long readTimestamp) {
+        final int handleLimit = chunkLimit.get() << CHUNK_BITS;
+        return new Iterator<Account>() {
+
+            private int handle;
+
+            private Account next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && handle < handleLimit) {
+                    final BalanceVersions.Chain chain = chainOf(handle++);
+                    if (chain == null) {
+                        continue;
+                    }
+                    final BalanceVersions.Version version = versions.visibleAt(chain, readTimestamp);
+                    if (version == BalanceVersions.TRUNCATED) {
+                        throw new IllegalStateException("Version of " + chain.accountId + " missing from an open snapshot.");
+                    }
+                    if (version != null) {
+                        next = new Account(chain.accountId, version.balance);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Account next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Account account = next;
+                next = null;
+                return account;
+            }
+        };
+    }
+
+    private class JournalReplay implements TransactionJournal.RecordHandler {
+
+        @Override
+        public void onCreate(long sequence, String accountId, BigDecimal balance) {
+            final int handle = accountDictionary.register(accountId);
+            final BalanceVersions.Commit commit = versions.begin();
+            chunkOf(handle).set(handle & CHUNK_MASK, versions.create(accountId, balance, commit));
+            versions.publish(commit);
+        }
+
+        @Override
+        public void onUpdate(long sequence, String accountId, BigDecimal balance) {
+            final BalanceVersions.Chain chain = chainOf(accountDictionary.handleOf(accountId));
+            if (chain != null) {
+                final BalanceVersions.Commit commit = versions.begin();
+                versions.install(chain, balance, commit);
+                versions.publish(commit);
+            }
+        }
+
+        @Override
+        public void onClear(long sequence) {
+            clearChains();
+        }
     }
 
 }
@@ -0,0 +1,461 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps accounts outside the Java heap, so that very large books need neither a large heap nor long GC pauses.
+ * <p>
+ * Accounts are spread over segments by id hash. Each segment holds an open-addressing hash table in a direct
+ * buffer, 16 bytes per slot ({@code int keyOffset | int hash | long balance in minor units}), and appends the
+ * UTF-8 ids to a second direct buffer. A segment is guarded by a {@link StampedLock}: lookups are optimistic reads,
+ * and balance changes take the write locks of the one or two segments involved, in segment order. {@link Account}
+ * objects are only created when an account is returned.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "off-heap")
+public class AccountsRepositoryOffHeap implements AtomicTransferRepository {
+
+    private static final int SLOT_SIZE = 16;
+    private static final int HASH_OFFSET = 4;
+    private static final int BALANCE_OFFSET = 8;
+    private static final int MAX_ID_LENGTH = 0xFFFF;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    private final int scale;
+
+    @Autowired
+    public AccountsRepositoryOffHeap(@Value("${accounts.off-heap.segments:64}") int segmentCount,
+                                     @Value("${accounts.off-heap.initial-capacity:1048576}") int initialCapacity,
+                                     @Value("${accounts.balance-scale:2}") int scale) {
+        final int count = segmentCount <= 1 ? 1 : Integer.highestOneBit(segmentCount - 1) << 1;
+        this.segments = new Segment[count];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        final int segmentCapacity = Math.max(16, initialCapacity / count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.scale = scale;
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountException {
+        final long units = toMinorUnits(account.getBalance());
+        final byte[] id = encode(account.getAccountId());
+        final int hash = hash(id);
+        final Segment segment = segmentOf(hash);
+        final long stamp = segment.lock.writeLock();
+        try {
+            if (!segment.insert(id, hash, units)) {
+                throw new DuplicateAccountException(
+                        "Provided Account Id " + account.getAccountId() + " is already exists into system.");
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        final byte[] id = encode(accountId);
+        final int hash = hash(id);
+        final Segment segment = segmentOf(hash);
+
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                final long balance = segment.balanceOf(id, hash);
+                if (segment.lock.validate(stamp)) {
+                    return toAccount(accountId, balance);
+                }
+            } catch (RuntimeException concurrentResize) {
+                // the table was swapped under the optimistic read; retry under the read lock
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return toAccount(accountId, segment.balanceOf(id, hash));
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void clearAccounts() {
+        for (Segment segment : segments) {
+            final long stamp = segment.lock.writeLock();
+            try {
+                segment.clear();
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Weakly consistent: each segment is copied in batches under its read lock, so a transfer across segments may be
+     * seen on one side only.
+     */
+    @Override
+    public void exportAccounts(Consumer<Account> sink) {
+        final int batchSize = 1024;
+        final String[] ids = new String[batchSize];
+        final long[] balances = new long[batchSize];
+        for (Segment segment : segments) {
+            int slot = 0;
+            while (true) {
+                int copied = 0;
+                boolean more;
+                final long stamp = segment.lock.readLock();
+                try {
+                    while (slot < segment.capacity && copied < batchSize) {
+                        final int keyOffset = segment.slots.getInt(slot * SLOT_SIZE);
+                        if (keyOffset != 0) {
+                            ids[copied] = segment.decodeKey(keyOffset);
+                            balances[copied++] = segment.slots.getLong(slot * SLOT_SIZE + BALANCE_OFFSET);
+                        }
+                        slot++;
+                    }
+                    more = slot < segment.capacity;
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+                for (int i = 0; i < copied; i++) {
+                    sink.accept(toAccount(ids[i], balances[i]));
+                }
+                if (!more) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean updateAccounts(List<AccountUpdate> accountUpdates) {
+        for (AccountUpdate accountUpdate : accountUpdates) {
+            final long units = toMinorUnits(accountUpdate.getBalance());
+            final byte[] id = encode(accountUpdate.getAccountId());
+            final int hash = hash(id);
+            final Segment segment = segmentOf(hash);
+            final long stamp = segment.lock.writeLock();
+            try {
+                final int slot = segment.find(id, hash);
+                if (slot >= 0) {
+                    segment.setBalance(slot, segment.balance(slot) + units);
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void transfer(String accountFromId, String accountToId, BigDecimal amount)
+            throws AccountNotFoundException, NotEnoughBalanceException, InvalidAmountException {
+        final long units = toMinorUnits(amount);
+        final byte[] idFrom = encode(accountFromId);
+        final byte[] idTo = encode(accountToId);
+        final int hashFrom = hash(idFrom);
+        final int hashTo = hash(idTo);
+        final int indexFrom = segmentIndex(hashFrom);
+        final int indexTo = segmentIndex(hashTo);
+        final Segment segmentFrom = segments[indexFrom];
+        final Segment segmentTo = segments[indexTo];
+
+        final Segment first = indexFrom <= indexTo ? segmentFrom : segmentTo;
+        final Segment second = indexFrom <= indexTo ? segmentTo : segmentFrom;
+        final long firstStamp = first.lock.writeLock();
+        final long secondStamp = second != first ? second.lock.writeLock() : 0;
+        try {
+            final int slotFrom = segmentFrom.find(idFrom, hashFrom);
+            if (slotFrom < 0) {
+                throw new AccountNotFoundException("Account " + accountFromId + " not found.");
+            }
+            final int slotTo = segmentTo.find(idTo, hashTo);
+            if (slotTo < 0) {
+                throw new AccountNotFoundException("Account " + accountToId + " not found.");
+            }
+            final long balanceFrom = segmentFrom.balance(slotFrom);
+            if (balanceFrom < units) {
+                throw new NotEnoughBalanceException("Not enough balance in account " + accountFromId
+                        + " balance=" + toBalance(balanceFrom));
+            }
+            segmentFrom.setBalance(slotFrom, balanceFrom - units);
+            segmentTo.setBalance(slotTo, segmentTo.balance(slotTo) + units);
+        } finally {
+            if (second != first) {
+                second.lock.unlockWrite(secondStamp);
+            }
+            first.lock.unlockWrite(firstStamp);
+        }
+    }
+
+    @Override
+    public void transfer(List<AccountUpdate> legs)
+            throws AccountNotFoundException, NotEnoughBalanceException, InvalidAmountException {
+        final int count = legs.size();
+        final byte[][] ids = new byte[count][];
+        final int[] hashes = new int[count];
+        final long[] units = new long[count];
+        final boolean[] involved = new boolean[segments.length];
+        for (int i = 0; i < count; i++) {
+            units[i] = toMinorUnits(legs.get(i).getBalance());
+            ids[i] = encode(legs.get(i).getAccountId());
+            hashes[i] = hash(ids[i]);
+            involved[segmentIndex(hashes[i])] = true;
+        }
+
+        final long[] stamps = new long[segments.length];
+        for (int index = 0; index < segments.length; index++) {
+            if (involved[index]) {
+                stamps[index] = segments[index].lock.writeLock();
+            }
+        }
+        try {
+            final int[] slots = new int[count];
+            for (int i = 0; i < count; i++) {
+                slots[i] = segmentOf(hashes[i]).find(ids[i], hashes[i]);
+                if (slots[i] < 0) {
+                    throw new AccountNotFoundException("Account " + legs.get(i).getAccountId() + " not found.");
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                final long balance = segmentOf(hashes[i]).balance(slots[i]);
+                if (balance + units[i] < 0) {
+                    throw new NotEnoughBalanceException("Not enough balance in account " + legs.get(i).getAccountId()
+                            + " balance=" + toBalance(balance));
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                final Segment segment = segmentOf(hashes[i]);
+                segment.setBalance(slots[i], segment.balance(slots[i]) + units[i]);
+            }
+        } finally {
+            for (int index = segments.length - 1; index >= 0; index--) {
+                if (involved[index]) {
+                    segments[index].lock.unlockWrite(stamps[index]);
+                }
+            }
+        }
+    }
+
+    private Segment segmentOf(int hash) {
+        return segments[segmentIndex(hash)];
+    }
+
+    private int segmentIndex(int hash) {
+        // unsigned shift by up to 32 bits, so a single segment takes index 0
+        return (int) ((hash & 0xFFFFFFFFL) >>> segmentShift);
+    }
+
+    private Account toAccount(String accountId, long balance) {
+        return balance == Long.MIN_VALUE ? null : new Account(accountId, toBalance(balance));
+    }
+
+    private long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.movePointRight(scale).longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new InvalidAmountException("Amount " + amount + " cannot be represented with " + scale + " decimal places.");
+        }
+    }
+
+    private BigDecimal toBalance(long units) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    private static byte[] encode(String accountId) {
+        final byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_LENGTH) {
+            throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " bytes.");
+        }
+        return id;
+    }
+
+    private static int hash(byte[] id) {
+        int hash = 1;
+        for (byte b : id) {
+            hash = 31 * hash + b;
+        }
+        // spread the bits, the high ones pick the segment and the low ones the slot
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * One hash table; every method must be called under the segment's lock, or validated as an optimistic read.
+     */
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+
+        private final int initialCapacity;
+
+        private ByteBuffer slots;
+
+        private int capacity;
+
+        private int size;
+
+        private ByteBuffer keys;
+
+        private Segment(int initialCapacity) {
+            this.initialCapacity = Integer.highestOneBit(initialCapacity - 1) << 1;
+            clear();
+        }
+
+        private void clear() {
+            capacity = initialCapacity;
+            slots = allocate(capacity * SLOT_SIZE);
+            size = 0;
+            keys = allocate(Math.max(1024, capacity * 8));
+            // offset 0 marks an empty slot
+            keys.position(1);
+        }
+
+        /**
+         * Returns the slot holding the id, or the complement of the free slot where it belongs.
+         */
+        private int find(byte[] id, int hash) {
+            final ByteBuffer table = slots;
+            final int mask = capacity - 1;
+            int slot = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                final int keyOffset = table.getInt(slot * SLOT_SIZE);
+                if (keyOffset == 0) {
+                    return ~slot;
+                }
+                if (table.getInt(slot * SLOT_SIZE + HASH_OFFSET) == hash && keyEquals(keyOffset, id)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            throw new IllegalStateException("Segment table is full.");
+        }
+
+        private long balanceOf(byte[] id, int hash) {
+            final int slot = find(id, hash);
+            return slot < 0 ? Long.MIN_VALUE : balance(slot);
+        }
+
+        private long balance(int slot) {
+            return slots.getLong(slot * SLOT_SIZE + BALANCE_OFFSET);
+        }
+
+        private void setBalance(int slot, long balance) {
+            slots.putLong(slot * SLOT_SIZE + BALANCE_OFFSET, balance);
+        }
+
+        private boolean insert(byte[] id, int hash, long balance) {
+            int slot = find(id, hash);
+            if (slot >= 0) {
+                return false;
+            }
+            if ((size + 1) * 4L > capacity * 3L) {
+                resize();
+                slot = find(id, hash);
+            }
+            slot = ~slot;
+            final int keyOffset = appendKey(id);
+            slots.putInt(slot * SLOT_SIZE + HASH_OFFSET, hash);
+            slots.putLong(slot * SLOT_SIZE + BALANCE_OFFSET, balance);
+            slots.putInt(slot * SLOT_SIZE, keyOffset);
+            size++;
+            return true;
+        }
+
+        private void resize() {
+            if (capacity >= MAX_CAPACITY) {
+                throw new IllegalStateException("Segment holds the maximum of " + MAX_CAPACITY + " accounts.");
+            }
+            final ByteBuffer previous = slots;
+            final int previousCapacity = capacity;
+            final int newCapacity = capacity * 2;
+            final int mask = newCapacity - 1;
+            final ByteBuffer table = allocate(newCapacity * SLOT_SIZE);
+            for (int i = 0; i < previousCapacity; i++) {
+                final int keyOffset = previous.getInt(i * SLOT_SIZE);
+                if (keyOffset == 0) {
+                    continue;
+                }
+                final int hash = previous.getInt(i * SLOT_SIZE + HASH_OFFSET);
+                int slot = hash & mask;
+                while (table.getInt(slot * SLOT_SIZE) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table.putInt(slot * SLOT_SIZE, keyOffset);
+                table.putInt(slot * SLOT_SIZE + HASH_OFFSET, hash);
+                table.putLong(slot * SLOT_SIZE + BALANCE_OFFSET, previous.getLong(i * SLOT_SIZE + BALANCE_OFFSET));
+            }
+            slots = table;
+            capacity = newCapacity;
+        }
+
+        private int appendKey(byte[] id) {
+            if (keys.remaining() < 2 + id.length) {
+                final long required = (long) keys.position() + 2 + id.length;
+                final long grown = Math.max(required, (long) keys.capacity() * 2);
+                if (grown > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Segment account ids exceed 2 GB.");
+                }
+                final ByteBuffer previous = keys;
+                final ByteBuffer copy = allocate((int) grown);
+                previous.flip();
+                copy.put(previous);
+                keys = copy;
+            }
+            final int offset = keys.position();
+            keys.putShort((short) id.length);
+            keys.put(id);
+            return offset;
+        }
+
+        private boolean keyEquals(int keyOffset, byte[] id) {
+            final ByteBuffer arena = keys;
+            if ((arena.getShort(keyOffset) & 0xFFFF) != id.length) {
+                return false;
+            }
+            final int start = keyOffset + 2;
+            for (int i = 0; i < id.length; i++) {
+                if (arena.get(start + i) != id[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String decodeKey(int keyOffset) {
+            final byte[] id = new byte[keys.getShort(keyOffset) & 0xFFFF];
+            for (int i = 0; i < id.length; i++) {
+                id[i] = keys.get(keyOffset + 2 + i);
+            }
+            return new String(id, StandardCharsets.UTF_8);
+        }
+
+        private static ByteBuffer allocate(int bytes) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshots of all accounts, each tagged with the journal sequence it was taken at.
+ * <p>
+ * File layout: {@code int magic | int version | long sequence}, then one
+ * {@code short idLength | id | int scale | short unscaledLength | unscaled} entry per account, then
+ * {@code short -1 | long count | int crc32} where the checksum covers every entry. Snapshots are loaded with
+ * memory-mapped reads; the newest intact one wins.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.snapshot.enabled", havingValue = "true")
+public class AccountsSnapshotStore {
+
+    private static final int MAGIC = 0x41434354;
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRY_SIZE = 2 + 0xFFFF + 4 + 2 + 0xFFFF;
+    private static final long MAX_WINDOW = 1L << 30;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path directory;
+
+    private final int retained;
+
+    @Autowired
+    public AccountsSnapshotStore(@Value("${accounts.snapshot.directory:data/snapshots}") String directory,
+                                 @Value("${accounts.snapshot.retained:2}") int retained) {
+        this(Paths.get(directory), retained);
+    }
+
+    AccountsSnapshotStore(Path directory, int retained) {
+        this.directory = directory;
+        this.retained = Math.max(1, retained);
+    }
+
+    /**
+     * Loads the newest intact snapshot into the handler and returns its journal sequence, or 0 without a snapshot.
+     * A snapshot failing its checksum is cleared from the handler and the next older one is tried.
+     */
+    public long load(TransactionJournal.RecordHandler handler) {
+        final List<Path> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            final Path snapshot = snapshots.get(i);
+            final long sequence = sequenceOf(snapshot);
+            try {
+                final long loaded = read(snapshot, sequence, handler);
+                log.info("Loaded {} accounts from snapshot {}", loaded, snapshot);
+                return sequence;
+            } catch (RuntimeException e) {
+                log.warn("Skipping corrupted snapshot {}", snapshot, e);
+                handler.onClear(sequence);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the accounts to a temporary file and publishes it under its sequence once {@code beforePublish}
+     * has returned.
+     */
+    public void write(long sequence, Iterable<Account> accounts, Runnable beforePublish) {
+        final Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+        final Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+                final DataOutputStream header = new DataOutputStream(file);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(sequence);
+
+                final CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+                final DataOutputStream entries = new DataOutputStream(checked);
+                long count = 0;
+                for (Account account : accounts) {
+                    final byte[] id = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+                    final BigDecimal balance = account.getBalance();
+                    final byte[] unscaled = balance.unscaledValue().toByteArray();
+                    entries.writeShort(id.length);
+                    entries.write(id);
+                    entries.writeInt(balance.scale());
+                    entries.writeShort(unscaled.length);
+                    entries.write(unscaled);
+                    count++;
+                }
+                entries.flush();
+
+                final DataOutputStream footer = new DataOutputStream(new BufferedOutputStream(file));
+                footer.writeShort(-1);
+                footer.writeLong(count);
+                footer.writeInt((int) checked.getChecksum().getValue());
+                footer.flush();
+                file.getChannel().force(true);
+            }
+            beforePublish.run();
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot " + target, e);
+        }
+        pruneSnapshots();
+    }
+
+    /**
+     * Journal sequence of the oldest snapshot kept on disk; journal records up to it are no longer needed.
+     */
+    public long getOldestRetainedSequence() {
+        final List<Path> snapshots = listSnapshots();
+        return snapshots.isEmpty() ? 0 : sequenceOf(snapshots.get(0));
+    }
+
+    private long read(Path snapshot, long sequence, TransactionJournal.RecordHandler handler) {
+        final CRC32 checksum = new CRC32();
+        final long[] count = new long[1];
+        scan(snapshot, (entry, id, balance) -> {
+            checksum.update(entry);
+            count[0]++;
+            handler.onCreate(sequence, id, balance);
+        }, footer -> footer.getLong() == count[0] && footer.getInt() == (int) checksum.getValue());
+        return count[0];
+    }
+
+    private interface EntryVisitor {
+        void visit(ByteBuffer entry, String accountId, BigDecimal balance);
+    }
+
+    private interface FooterCheck {
+        boolean matches(ByteBuffer footer);
+    }
+
+    /**
+     * Walks the entries through read-only mappings of at most {@link #MAX_WINDOW} bytes, remapping whenever the
+     * current window may no longer hold a whole entry.
+     */
+    private void scan(Path snapshot, EntryVisitor visitor, FooterCheck footerCheck) {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long offset = 0;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_WINDOW));
+            if (window.getInt() != MAGIC || window.getInt() != VERSION) {
+                throw new IllegalStateException("Not a snapshot file: " + snapshot);
+            }
+            window.getLong();
+
+            while (true) {
+                if (window.remaining() < MAX_ENTRY_SIZE && offset + window.limit() < size) {
+                    offset += window.position();
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, MAX_WINDOW));
+                }
+                final int start = window.position();
+                final short idLength = window.getShort();
+                if (idLength == -1) {
+                    if (!footerCheck.matches(window)) {
+                        throw new IllegalStateException("Snapshot checksum mismatch: " + snapshot);
+                    }
+                    return;
+                }
+                final byte[] id = new byte[idLength & 0xFFFF];
+                window.get(id);
+                final int scale = window.getInt();
+                final byte[] unscaled = new byte[window.getShort() & 0xFFFF];
+                window.get(unscaled);
+
+                final ByteBuffer entry = window.duplicate();
+                entry.limit(window.position());
+                entry.position(start);
+                visitor.visit(entry, new String(id, StandardCharsets.UTF_8), new BigDecimal(new BigInteger(unscaled), scale));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read snapshot " + snapshot, e);
+        }
+    }
+
+    private void pruneSnapshots() {
+        final List<Path> snapshots = listSnapshots();
+        for (int i = 0; i < snapshots.size() - retained; i++) {
+            try {
+                Files.deleteIfExists(snapshots.get(i));
+            } catch (IOException e) {
+                log.warn("Could not delete old snapshot {}", snapshots.get(i), e);
+            }
+        }
+    }
+
+    private List<Path> listSnapshots() {
+        final List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path path : stream) {
+                snapshots.add(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list snapshots in " + directory, e);
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        final String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Repository able to move funds between two accounts atomically on its own, without callers locking accounts.
+ */
+public interface AtomicTransferRepository extends AccountsRepository {
+
+    void transfer(String accountFromId, String accountToId, BigDecimal amount)
+            throws AccountNotFoundException, NotEnoughBalanceException, InvalidAmountException;
+
+    /**
+     * Applies the legs, at most one per account and summing to zero, all together or not at all: if any account is
+     * missing or would go negative, no balance changes.
+     */
+    void transfer(List<AccountUpdate> legs)
+            throws AccountNotFoundException, NotEnoughBalanceException, InvalidAmountException;
+
+}
@@ -0,0 +1,158 @@
+package com.db.awmd.challenge.repository;
+
+import java.math.BigDecimal;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-version balances: every change prepends an immutable {@link Version} to the account's {@link Chain}, and a
+ * reader picks the newest version committed at or before its read timestamp, without any lock.
+ * <p>
+ * The versions a writer installs share one {@link Commit}, which only gets its timestamp once all of them are in
+ * place, so a reader sees either all or none of them. Writers must be the only writer of the accounts they change,
+ * and must run inside the repository's commit barrier while installing, so that {@link #openSnapshot()} can be
+ * called with all writers excluded.
+ * <p>
+ * Versions no reader can need any more are cut off as new ones are installed. A reader that has not registered its
+ * timestamp as a snapshot may find its version cut off, which it learns from {@link #TRUNCATED}, and must read
+ * again at a newer timestamp.
+ */
+final class BalanceVersions {
+
+    /**
+     * Returned by {@link #visibleAt(Chain, long)} when the version the reader needs has been cut off.
+     */
+    static final Version TRUNCATED = new Version(null, null, null, false);
+
+    private static final long INSTALLING = Long.MAX_VALUE;
+    private static final long ALLOCATING = Long.MAX_VALUE - 1;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+
+    private volatile long oldestSnapshot = Long.MAX_VALUE;
+
+    Commit begin() {
+        return new Commit();
+    }
+
+    /**
+     * Makes the versions installed under the commit visible to every read timestamp taken from now on.
+     */
+    void publish(Commit commit) {
+        // a reader seeing ALLOCATING waits, as the timestamp about to be taken may be at or below its own
+        commit.timestamp = ALLOCATING;
+        commit.timestamp = clock.incrementAndGet();
+    }
+
+    Chain create(String accountId, BigDecimal balance, Commit commit) {
+        return new Chain(accountId, new Version(balance, commit, null, true));
+    }
+
+    void install(Chain chain, BigDecimal balance, Commit commit) {
+        final Version previous = chain.head;
+        chain.head = new Version(balance, commit, previous, false);
+
+        final long horizon = Math.min(oldestSnapshot, clock.get());
+        for (Version version = previous; version != null; version = version.previous) {
+            if (version.commit.timestamp <= horizon) {
+                // every reader will find this version or a newer one
+                version.previous = null;
+                break;
+            }
+        }
+    }
+
+    long readTimestamp() {
+        return clock.get();
+    }
+
+    /**
+     * Returns the version of the account visible at the read timestamp, null if the account did not exist yet, or
+     * {@link #TRUNCATED}.
+     */
+    Version visibleAt(Chain chain, long readTimestamp) {
+        for (Version version = chain.head; version != null; ) {
+            long timestamp = version.commit.timestamp;
+            while (timestamp == ALLOCATING) {
+                Thread.yield();
+                timestamp = version.commit.timestamp;
+            }
+            if (timestamp <= readTimestamp) {
+                return version;
+            }
+            final Version previous = version.previous;
+            if (previous == null) {
+                return version.created ? null : TRUNCATED;
+            }
+            version = previous;
+        }
+        return null;
+    }
+
+    /**
+     * Registers a read timestamp whose versions are kept until {@link #closeSnapshot(long)}. Must be called while no
+     * writer is installing versions.
+     */
+    synchronized long openSnapshot() {
+        final long readTimestamp = clock.get();
+        snapshots.merge(readTimestamp, 1, Integer::sum);
+        oldestSnapshot = snapshots.firstKey();
+        return readTimestamp;
+    }
+
+    synchronized void closeSnapshot(long readTimestamp) {
+        snapshots.computeIfPresent(readTimestamp, (timestamp, count) -> count == 1 ? null : count - 1);
+        oldestSnapshot = snapshots.isEmpty() ? Long.MAX_VALUE : snapshots.firstKey();
+    }
+
+    static final class Commit {
+
+        private volatile long timestamp = INSTALLING;
+
+        private Commit() {
+        }
+    }
+
+    static final class Version {
+
+        final BigDecimal balance;
+
+        private final Commit commit;
+
+        private volatile Version previous;
+
+        private final boolean created;
+
+        private Version(BigDecimal balance, Commit commit, Version previous, boolean created) {
+            this.balance = balance;
+            this.commit = commit;
+            this.previous = previous;
+            this.created = created;
+        }
+    }
+
+    /**
+     * All versions of one account, newest first.
+     */
+    static final class Chain {
+
+        final String accountId;
+
+        private volatile Version head;
+
+        private Chain(String accountId, Version head) {
+            this.accountId = accountId;
+            this.head = head;
+        }
+
+        /**
+         * The newest balance, for the account's writer.
+         */
+        BigDecimal latest() {
+            return head.balance;
+        }
+    }
+
+}
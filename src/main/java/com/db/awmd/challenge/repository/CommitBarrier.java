@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.repository;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Lets writers run concurrently with each other while allowing a reader to briefly exclude all of them, e.g. to
+ * capture a journal position that every applied change is known to precede. Writers spread over several
+ * read-write locks by thread, so entering the barrier does not contend on a single shared counter.
+ */
+final class CommitBarrier {
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    private final int mask;
+
+    CommitBarrier() {
+        int size = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = size - 1;
+    }
+
+    int enter() {
+        final int stripe = (int) Thread.currentThread().getId() & mask;
+        stripes[stripe].readLock().lock();
+        return stripe;
+    }
+
+    void exit(int stripe) {
+        stripes[stripe].readLock().unlock();
+    }
+
+    long exclusive(LongSupplier action) {
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                stripes[locked].writeLock().lock();
+            }
+            return action.getAsLong();
+        } finally {
+            while (locked > 0) {
+                stripes[--locked].writeLock().unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between {@link ReplicationPrimary} and {@link ReplicationFollower}: a stream of records
+ * {@code byte type | body}, with bodies encoded like those of the {@link TransactionJournal}: ids as their UTF-8
+ * bytes behind an explicit length, here an int. A follower that (re)connects first receives a {@link #CLEAR}, then
+ * one {@link #CREATE} per account, then the changes.
+ */
+final class ReplicationCodec {
+
+    static final byte CREATE = 1;
+    static final byte UPDATE = 2;
+    static final byte CLEAR = 3;
+    static final byte HEARTBEAT = 4;
+
+    /**
+     * The primary sends a heartbeat whenever it had nothing to send for this long.
+     */
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    private ReplicationCodec() {
+    }
+
+    static void writeCreate(DataOutputStream out, Account account) throws IOException {
+        out.writeByte(CREATE);
+        writeAccount(out, account);
+    }
+
+    static void writeUpdate(DataOutputStream out, List<Account> accounts) throws IOException {
+        out.writeByte(UPDATE);
+        out.writeInt(accounts.size());
+        for (Account account : accounts) {
+            writeAccount(out, account);
+        }
+    }
+
+    static Account readAccount(DataInputStream in) throws IOException {
+        final String accountId = readString(in);
+        final int scale = in.readInt();
+        final byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        return new Account(accountId, new BigDecimal(new BigInteger(unscaled), scale));
+    }
+
+    static List<Account> readUpdate(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(readAccount(in));
+        }
+        return accounts;
+    }
+
+    private static void writeAccount(DataOutputStream out, Account account) throws IOException {
+        final byte[] unscaled = account.getBalance().unscaledValue().toByteArray();
+        writeString(out, account.getAccountId());
+        out.writeInt(account.getBalance().scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the in-memory repository of a read-only replica in step with a {@link ReplicationPrimary}. Every record is
+ * applied as one commit, so readers see each transfer of the primary whole. When the connection is lost, or the
+ * primary stops sending heartbeats, the follower reconnects and starts over from a fresh snapshot; while the snapshot
+ * is being received, reads may miss accounts.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.replication.role", havingValue = "follower")
+public class ReplicationFollower {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AccountsRepositoryInMemory accountsRepository;
+
+    private final AccountDictionary accountDictionary;
+
+    private final String host;
+
+    private final int port;
+
+    private final long reconnectMillis;
+
+    private final LongAdder applied = new LongAdder();
+
+    private Thread receiver;
+
+    private volatile Socket socket;
+
+    private volatile boolean running;
+
+    private volatile boolean connected;
+
+    @Autowired
+    public ReplicationFollower(AccountsRepositoryInMemory accountsRepository, AccountDictionary accountDictionary,
+                               @Value("${accounts.replication.primary-host:localhost}") String host,
+                               @Value("${accounts.replication.port:18090}") int port,
+                               @Value("${accounts.replication.reconnect-ms:1000}") long reconnectMillis) {
+        this.accountsRepository = accountsRepository;
+        this.accountDictionary = accountDictionary;
+        this.host = host;
+        this.port = port;
+        this.reconnectMillis = reconnectMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        receiver = new Thread(this::follow, "replication-follower");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        final Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Could not close replication socket", e);
+            }
+        }
+        receiver.interrupt();
+        receiver.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Number of records applied since startup, across reconnects.
+     */
+    public long getAppliedRecords() {
+        return applied.sum();
+    }
+
+    private void follow() {
+        while (running) {
+            try (Socket current = new Socket()) {
+                socket = current;
+                current.connect(new InetSocketAddress(host, port), (int) reconnectMillis);
+                current.setSoTimeout((int) (ReplicationCodec.HEARTBEAT_MILLIS * 5));
+                connected = true;
+                log.info("Following replication primary {}:{}", host, port);
+                receive(new DataInputStream(new BufferedInputStream(current.getInputStream(), BUFFER_SIZE)));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Lost replication primary {}:{}, reconnecting in {} ms: {}", host, port, reconnectMillis,
+                            e.toString());
+                }
+            } finally {
+                connected = false;
+            }
+            try {
+                Thread.sleep(reconnectMillis);
+            } catch (InterruptedException ie) {
+                return;
+            }
+        }
+    }
+
+    private void receive(DataInputStream in) throws IOException {
+        while (running) {
+            final byte type = in.readByte();
+            switch (type) {
+                case ReplicationCodec.CREATE:
+                    // registered first, as on the primary, so that reads by handle find the account
+                    final Account account = ReplicationCodec.readAccount(in);
+                    accountDictionary.register(account.getAccountId());
+                    accountsRepository.applyReplicatedCreate(account);
+                    break;
+                case ReplicationCodec.UPDATE:
+                    accountsRepository.applyReplicatedUpdate(ReplicationCodec.readUpdate(in));
+                    break;
+                case ReplicationCodec.CLEAR:
+                    accountsRepository.clearAccounts();
+                    break;
+                case ReplicationCodec.HEARTBEAT:
+                    continue;
+                default:
+                    throw new IOException("Unknown replication record type " + type);
+            }
+            applied.increment();
+        }
+    }
+
+}
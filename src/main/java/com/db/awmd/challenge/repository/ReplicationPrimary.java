@@ -0,0 +1,232 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the changes committed to the in-memory repository to {@link ReplicationFollower}s over TCP.
+ * <p>
+ * Replication is asynchronous: a commit only offers its change to each follower's bounded queue, and a sender thread
+ * per follower drains the queue in batches, flushing the socket once per batch. A follower that falls a whole queue
+ * behind is disconnected and receives a fresh snapshot when it reconnects, so writers never wait for a follower.
+ * Changes acknowledged by the primary but not yet sent are lost if it fails.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.replication.role", havingValue = "primary")
+public class ReplicationPrimary {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AccountsRepositoryInMemory accountsRepository;
+
+    private final int port;
+
+    private final int queueCapacity;
+
+    private final int batchSize;
+
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+
+    private ServerSocket serverSocket;
+
+    private Thread acceptor;
+
+    private volatile boolean running;
+
+    @Autowired(required = false)
+    private MetricsRegistry metricsRegistry;
+
+    @Autowired
+    public ReplicationPrimary(AccountsRepositoryInMemory accountsRepository,
+                              @Value("${accounts.replication.port:18090}") int port,
+                              @Value("${accounts.replication.queue-capacity:65536}") int queueCapacity,
+                              @Value("${accounts.replication.batch-size:1024}") int batchSize) {
+        this.accountsRepository = accountsRepository;
+        this.port = port;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (metricsRegistry != null) {
+            metricsRegistry.gauge("replication.followers", followers::size);
+        }
+        serverSocket = new ServerSocket(port);
+        running = true;
+        acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Replicating accounts to followers connecting on port {}", getPort());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        serverSocket.close();
+        acceptor.join(TimeUnit.SECONDS.toMillis(5));
+        for (Follower follower : followers) {
+            follower.close();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                final Follower follower = new Follower(socket);
+                followers.add(follower);
+                final Thread sender = new Thread(follower::send, "replication-sender-" + socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Could not accept replication follower", e);
+                }
+            }
+        }
+    }
+
+    private static final class Change {
+
+        private final byte type;
+
+        private final List<Account> accounts;
+
+        private Change(byte type, List<Account> accounts) {
+            this.type = type;
+            this.accounts = accounts;
+        }
+    }
+
+    private final class Follower implements AccountsRepositoryInMemory.ChangeListener {
+
+        private final Socket socket;
+
+        private final BlockingQueue<Change> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        private volatile boolean overflowed;
+
+        private Follower(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void onCreate(Account account) {
+            offer(new Change(ReplicationCodec.CREATE, Collections.singletonList(account)));
+        }
+
+        @Override
+        public void onUpdate(List<Account> accounts) {
+            offer(new Change(ReplicationCodec.UPDATE, accounts));
+        }
+
+        @Override
+        public void onClear() {
+            offer(new Change(ReplicationCodec.CLEAR, Collections.emptyList()));
+        }
+
+        private void offer(Change change) {
+            if (!overflowed && !queue.offer(change)) {
+                overflowed = true;
+            }
+        }
+
+        private void send() {
+            try {
+                final DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+                out.writeByte(ReplicationCodec.CLEAR);
+                accountsRepository.addListener(this, account -> {
+                    try {
+                        ReplicationCodec.writeCreate(out, account);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                out.flush();
+
+                final List<Change> batch = new ArrayList<>(batchSize);
+                while (running && !overflowed) {
+                    final Change first = queue.poll(ReplicationCodec.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        out.writeByte(ReplicationCodec.HEARTBEAT);
+                    } else {
+                        batch.add(first);
+                        queue.drainTo(batch, batchSize - 1);
+                        for (Change change : batch) {
+                            write(out, change);
+                        }
+                        batch.clear();
+                    }
+                    out.flush();
+                }
+                if (overflowed) {
+                    log.warn("Follower {} fell {} changes behind, disconnecting it", socket.getRemoteSocketAddress(),
+                            queueCapacity);
+                }
+            } catch (IOException | UncheckedIOException e) {
+                log.info("Follower {} disconnected: {}", socket.getRemoteSocketAddress(), e.toString());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                accountsRepository.removeListener(this);
+                followers.remove(this);
+                close();
+            }
+        }
+
+        private void write(DataOutputStream out, Change change) throws IOException {
+            switch (change.type) {
+                case ReplicationCodec.CREATE:
+                    ReplicationCodec.writeCreate(out, change.accounts.get(0));
+                    break;
+                case ReplicationCodec.UPDATE:
+                    ReplicationCodec.writeUpdate(out, change.accounts);
+                    break;
+                default:
+                    out.writeByte(change.type);
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Could not close follower socket", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,497 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of account creations and balance updates, written to memory-mapped segment files.
+ * <p>
+ * Appends only copy the record into the mapped segment; a group-commit thread forces the segment to disk once
+ * {@code max-batch} records are pending or the oldest pending record has waited {@code max-wait-micros}, and
+ * {@link #awaitDurable()} blocks the caller until its last append has been forced. Update records carry the
+ * resulting balances, so replaying a record is idempotent.
+ * <p>
+ * Record layout: {@code int length | long sequence | byte type | body | int crc32}, where the length covers the whole
+ * record. Unused segment space is zero-filled, so a zero length marks the end of a segment.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class TransactionJournal {
+
+    public interface RecordHandler {
+
+        void onCreate(long sequence, String accountId, BigDecimal balance);
+
+        void onUpdate(long sequence, String accountId, BigDecimal balance);
+
+        void onClear(long sequence);
+    }
+
+    private static final byte CREATE = 1;
+    private static final byte UPDATE = 2;
+    private static final byte CLEAR = 3;
+
+    private static final int HEADER_SIZE = 4 + 8 + 1;
+    private static final int TRAILER_SIZE = 4;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxWaitNanos;
+    private final int maxBatch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+
+    private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence = 1;
+    private long appendedSequence;
+    private long durableSequence;
+    private volatile Exception failure;
+
+    private Thread groupCommitThread;
+    private volatile boolean running;
+
+    @Autowired
+    public TransactionJournal(@Value("${accounts.journal.directory:data/journal}") String directory,
+                              @Value("${accounts.journal.segment-size-mb:64}") int segmentSizeMb,
+                              @Value("${accounts.journal.group-commit.max-wait-micros:1000}") long maxWaitMicros,
+                              @Value("${accounts.journal.group-commit.max-batch:512}") int maxBatch) {
+        this(Paths.get(directory), segmentSizeMb << 20, maxWaitMicros, maxBatch);
+    }
+
+    TransactionJournal(Path directory, int segmentSize, long maxWaitMicros, int maxBatch) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Replays every record with a sequence above {@code afterSequence}, then opens the journal for appends after
+     * the last intact record. A torn record at the tail of the last segment is discarded.
+     */
+    public void recover(long afterSequence, RecordHandler handler) {
+        lock.lock();
+        try {
+            Files.createDirectories(directory);
+            final List<Path> segments = listSegments();
+            long lastSequence = afterSequence;
+            for (int i = 0; i < segments.size(); i++) {
+                final boolean lastSegment = i == segments.size() - 1;
+                try (FileChannel segmentChannel = FileChannel.open(segments.get(i), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    MappedByteBuffer buffer = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentChannel.size());
+                    lastSequence = Math.max(lastSequence, replaySegment(buffer, afterSequence, handler, lastSegment));
+                    if (lastSegment) {
+                        buffer.force();
+                    }
+                }
+            }
+
+            nextSequence = lastSequence + 1;
+            appendedSequence = lastSequence;
+            durableSequence = lastSequence;
+            if (segments.isEmpty()) {
+                openSegment(nextSequence);
+            } else {
+                reopenSegment(segments.get(segments.size() - 1));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover journal from " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+
+        running = true;
+        groupCommitThread = new Thread(this::groupCommit, "journal-group-commit");
+        groupCommitThread.setDaemon(true);
+        groupCommitThread.start();
+    }
+
+    public long appendCreate(Account account) {
+        lock.lock();
+        try {
+            ByteBuffer body = body(64);
+            body = putString(body, account.getAccountId());
+            body = putDecimal(body, account.getBalance());
+            return append(CREATE, body);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long appendUpdate(List<Account> accounts, List<BigDecimal> balances) {
+        lock.lock();
+        try {
+            ByteBuffer body = body(64 * accounts.size());
+            body = ensure(body, 4);
+            body.putInt(accounts.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                body = putString(body, accounts.get(i).getAccountId());
+                body = putDecimal(body, balances.get(i));
+            }
+            return append(UPDATE, body);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long appendClear() {
+        lock.lock();
+        try {
+            return append(CLEAR, body(0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every record appended by the calling thread has been forced to disk.
+     */
+    public void awaitDurable() {
+        awaitDurable(lastAppended.get()[0]);
+    }
+
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new IllegalStateException("Journal could not be forced to disk.", failure);
+                }
+                durable.await();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the journal to be forced to disk.", ie);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAppendedSequence() {
+        lock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments whose records all have a sequence of at most {@code sequence}. The segment currently
+     * appended to is always kept.
+     */
+    public void deleteSegmentsUpTo(long sequence) {
+        lock.lock();
+        try {
+            final List<Path> segments = listSegments();
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (firstSequenceOf(segments.get(i + 1)) > sequence + 1) {
+                    break;
+                }
+                Files.delete(segments.get(i));
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete journal segments up to sequence {}", sequence, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        groupCommitThread.join();
+
+        lock.lock();
+        try {
+            segment.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(byte type, ByteBuffer body) {
+        body.flip();
+        final int length = HEADER_SIZE + body.remaining() + TRAILER_SIZE;
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + length + " bytes exceeds the segment size.");
+        }
+        if (segment.remaining() < length) {
+            rollSegment();
+        }
+
+        final long sequence = nextSequence++;
+        final int start = segment.position();
+        segment.putInt(length);
+        segment.putLong(sequence);
+        segment.put(type);
+        segment.put(body);
+        segment.putInt(checksum(segment, start, length));
+
+        appendedSequence = sequence;
+        lastAppended.get()[0] = sequence;
+        final long pending = appendedSequence - durableSequence;
+        if (pending == 1 || pending >= maxBatch) {
+            appended.signal();
+        }
+        return sequence;
+    }
+
+    private void groupCommit() {
+        while (true) {
+            final long target;
+            final MappedByteBuffer buffer;
+            lock.lock();
+            try {
+                while (running && appendedSequence == durableSequence) {
+                    appended.await();
+                }
+                if (!running && appendedSequence == durableSequence) {
+                    return;
+                }
+                long remaining = maxWaitNanos;
+                while (running && appendedSequence - durableSequence < maxBatch && remaining > 0) {
+                    remaining = appended.awaitNanos(remaining);
+                }
+                target = appendedSequence;
+                buffer = segment;
+            } catch (InterruptedException ie) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                buffer.force();
+            } catch (RuntimeException e) {
+                log.error("Could not force journal segment to disk", e);
+                lock.lock();
+                try {
+                    failure = e;
+                    durable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durableSequence = Math.max(durableSequence, target);
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long replaySegment(MappedByteBuffer buffer, long afterSequence, RecordHandler handler, boolean lastSegment) {
+        long lastSequence = 0;
+        while (buffer.remaining() >= HEADER_SIZE + TRAILER_SIZE) {
+            final int start = buffer.position();
+            final int length = buffer.getInt();
+            if (length == 0) {
+                buffer.position(start);
+                break;
+            }
+            if (length < HEADER_SIZE + TRAILER_SIZE || length > buffer.remaining() + 4 || !checksumMatches(buffer, start, length)) {
+                if (!lastSegment) {
+                    throw new IllegalStateException("Journal segment is corrupted at offset " + start);
+                }
+                log.warn("Discarding torn journal record at offset {}", start);
+                buffer.position(start);
+                while (buffer.hasRemaining()) {
+                    buffer.put((byte) 0);
+                }
+                buffer.position(start);
+                break;
+            }
+
+            final long sequence = buffer.getLong();
+            final byte type = buffer.get();
+            lastSequence = sequence;
+            if (sequence > afterSequence) {
+                replayRecord(buffer, sequence, type, handler);
+            }
+            buffer.position(start + length);
+        }
+        return lastSequence;
+    }
+
+    private void replayRecord(ByteBuffer buffer, long sequence, byte type, RecordHandler handler) {
+        switch (type) {
+            case CREATE:
+                handler.onCreate(sequence, getString(buffer), getDecimal(buffer));
+                break;
+            case UPDATE:
+                final int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    handler.onUpdate(sequence, getString(buffer), getDecimal(buffer));
+                }
+                break;
+            case CLEAR:
+                handler.onClear(sequence);
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private boolean checksumMatches(ByteBuffer buffer, int start, int length) {
+        return buffer.getInt(start + length - TRAILER_SIZE) == checksum(buffer, start, length);
+    }
+
+    private int checksum(ByteBuffer buffer, int start, int length) {
+        final CRC32 checksum = new CRC32();
+        final ByteBuffer record = buffer.duplicate();
+        record.limit(start + length - TRAILER_SIZE);
+        record.position(start + 4);
+        checksum.update(record);
+        return (int) checksum.getValue();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void rollSegment() {
+        try {
+            segment.force();
+            channel.close();
+            openSegment(nextSequence);
+        } catch (IOException e) {
+            failure = e;
+            durable.signalAll();
+            throw new UncheckedIOException("Could not roll journal segment", e);
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        final Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize);
+        }
+        reopenSegment(path);
+    }
+
+    private void reopenSegment(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        while (segment.remaining() >= 4) {
+            final int start = segment.position();
+            final int length = segment.getInt();
+            if (length <= 0) {
+                segment.position(start);
+                return;
+            }
+            segment.position(start + length);
+        }
+    }
+
+    private ByteBuffer body(int expectedSize) {
+        scratch.clear();
+        return ensure(scratch, expectedSize);
+    }
+
+    private ByteBuffer ensure(ByteBuffer buffer, int additional) {
+        if (buffer.remaining() >= additional) {
+            return buffer;
+        }
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + additional));
+        buffer.flip();
+        grown.put(buffer);
+        scratch = grown;
+        return grown;
+    }
+
+    private ByteBuffer putString(ByteBuffer buffer, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer target = ensure(buffer, 2 + bytes.length);
+        target.putShort((short) bytes.length);
+        target.put(bytes);
+        return target;
+    }
+
+    private ByteBuffer putDecimal(ByteBuffer buffer, BigDecimal value) {
+        final byte[] unscaled = value.unscaledValue().toByteArray();
+        final ByteBuffer target = ensure(buffer, 4 + 2 + unscaled.length);
+        target.putInt(value.scale());
+        target.putShort((short) unscaled.length);
+        target.put(unscaled);
+        return target;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        final int scale = buffer.getInt();
+        final byte[] unscaled = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+}
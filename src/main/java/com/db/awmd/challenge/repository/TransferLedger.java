@@ -0,0 +1,248 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only history of completed transfers per account.
+ * <p>
+ * Transfers are handed over after the account locks are released and appended by a single writer thread. Each
+ * account keeps its entries in chunks of a primitive {@code long[]}, four longs per entry: transfer id, timestamp,
+ * unscaled amount and the counterparty's {@link AccountDictionary} handle with the amount's scale. The first chunk
+ * starts with room for a few entries and doubles until it is full size, so that quiet accounts stay small. Readers
+ * page through the chunks without locking; an entry becomes visible once the account's size is published.
+ * <p>
+ * {@link #clear()} is queued like a transfer, so the writer drops exactly the history recorded before it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.ledger.enabled", havingValue = "true", matchIfMissing = true)
+public class TransferLedger {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_ENTRIES = 1 << CHUNK_SHIFT;
+    private static final int FIRST_CHUNK_ENTRIES = 4;
+    private static final int STRIDE = 4;
+    private static final int OVERSIZED_SCALE = Integer.MIN_VALUE;
+
+    private volatile ConcurrentMap<String, AccountLedger> ledgers = new ConcurrentHashMap<>();
+
+    private final AccountDictionary accountDictionary;
+
+    private final BlockingQueue<Transfer> pending;
+
+    private final int batchSize;
+
+    private final Thread writer;
+
+    private long lastTransferId;
+
+    private volatile boolean running;
+
+    @Autowired(required = false)
+    private MetricsRegistry metricsRegistry;
+
+    @Autowired
+    public TransferLedger(AccountDictionary accountDictionary,
+                          @Value("${accounts.ledger.queue-capacity:65536}") int queueCapacity,
+                          @Value("${accounts.ledger.batch-size:1024}") int batchSize) {
+        this.accountDictionary = accountDictionary;
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.writer = new Thread(this::drain, "transfer-ledger");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (metricsRegistry != null) {
+            metricsRegistry.gauge("accounts.ledger.queue.depth", pending::size);
+        }
+        running = true;
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Queues a completed transfer for both accounts' ledgers, waiting if the writer is too far behind.
+     */
+    public void record(Transfer transfer) {
+        try {
+            pending.put(transfer);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted before transfer {} was recorded in the ledger", transfer);
+        }
+    }
+
+    /**
+     * Drops the history of every account, including transfers recorded but not yet appended, and waits until the
+     * writer has done so. Transfers recorded after the call are kept.
+     */
+    public void clear() {
+        final Clear clear = new Clear();
+        try {
+            pending.put(clear);
+            if (!clear.applied.await(5, TimeUnit.SECONDS)) {
+                log.warn("Ledger writer did not reach the clear within 5 seconds");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted before the ledger was cleared");
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} entries of the account, newest first, starting below {@code cursor} or from the
+     * newest entry when it is null.
+     */
+    public LedgerPage page(String accountId, Long cursor, int limit) {
+        final AccountLedger ledger = ledgers.get(accountId);
+        if (ledger == null) {
+            return new LedgerPage(new ArrayList<>(), null);
+        }
+        final int size = ledger.size;
+        final long[][] chunks = ledger.chunks;
+
+        int index = cursor == null ? size : (int) Math.min(size, Math.max(0, cursor));
+        final List<LedgerEntry> entries = new ArrayList<>(Math.min(limit, index));
+        while (index > 0 && entries.size() < limit) {
+            index--;
+            final long[] chunk = chunks[index >>> CHUNK_SHIFT];
+            final int offset = (index & (CHUNK_ENTRIES - 1)) * STRIDE;
+            final long counterpartyAndScale = chunk[offset + 3];
+            final int scale = (int) counterpartyAndScale;
+            final BigDecimal amount = scale == OVERSIZED_SCALE
+                    ? ledger.oversized.get(index)
+                    : BigDecimal.valueOf(chunk[offset + 2], scale);
+            entries.add(new LedgerEntry(chunk[offset], chunk[offset + 1],
+                    accountDictionary.accountIdOf((int) (counterpartyAndScale >>> 32)), amount));
+        }
+        return new LedgerPage(entries, index > 0 ? Long.valueOf(index) : null);
+    }
+
+    private void drain() {
+        final List<Transfer> batch = new ArrayList<>(batchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                final Transfer first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            final long timestamp = System.currentTimeMillis();
+            for (Transfer transfer : batch) {
+                if (transfer instanceof Clear) {
+                    ledgers = new ConcurrentHashMap<>();
+                    ((Clear) transfer).applied.countDown();
+                } else {
+                    append(transfer, timestamp);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void append(Transfer transfer, long timestamp) {
+        final long transferId = ++lastTransferId;
+        final int fromHandle = accountDictionary.register(transfer.getAccountFromId());
+        final int toHandle = accountDictionary.register(transfer.getAccountToId());
+        ledgerOf(transfer.getAccountFromId()).append(transferId, timestamp, transfer.getBalance().negate(), toHandle);
+        ledgerOf(transfer.getAccountToId()).append(transferId, timestamp, transfer.getBalance(), fromHandle);
+    }
+
+    private AccountLedger ledgerOf(String accountId) {
+        return ledgers.computeIfAbsent(accountId, key -> new AccountLedger());
+    }
+
+    /**
+     * Queued by {@link #clear()} in place of a transfer.
+     */
+    private static final class Clear extends Transfer {
+
+        private final CountDownLatch applied = new CountDownLatch(1);
+
+        private Clear() {
+            super(null, null, null);
+        }
+    }
+
+    /**
+     * Entries of one account; only the writer thread appends.
+     */
+    private static final class AccountLedger {
+
+        private volatile long[][] chunks = new long[1][];
+
+        private volatile int size;
+
+        private final Map<Integer, BigDecimal> oversized = new ConcurrentHashMap<>();
+
+        private void append(long transferId, long timestamp, BigDecimal amount, int counterparty) {
+            final int index = size;
+            final int chunkIndex = index >>> CHUNK_SHIFT;
+            long[][] current = chunks;
+            if (chunkIndex == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            long[] chunk = current[chunkIndex];
+            final int offset = (index & (CHUNK_ENTRIES - 1)) * STRIDE;
+            if (chunk == null || offset == chunk.length) {
+                // readers still holding the smaller first chunk only read the entries copied into the new one
+                chunk = chunk == null
+                        ? new long[(chunkIndex == 0 ? FIRST_CHUNK_ENTRIES : CHUNK_ENTRIES) * STRIDE]
+                        : Arrays.copyOf(chunk, chunk.length * 2);
+                current[chunkIndex] = chunk;
+                chunks = current;
+            }
+
+            int scale = amount.scale();
+            long unscaled;
+            if (amount.unscaledValue().bitLength() < 64) {
+                unscaled = amount.unscaledValue().longValue();
+            } else {
+                oversized.put(index, amount);
+                unscaled = 0;
+                scale = OVERSIZED_SCALE;
+            }
+            chunk[offset] = transferId;
+            chunk[offset + 1] = timestamp;
+            chunk[offset + 2] = unscaled;
+            chunk[offset + 3] = ((long) counterparty << 32) | (scale & 0xFFFFFFFFL);
+            size = index + 1;
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportError;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports accounts from newline-delimited JSON, one {@code {"accountId": ..., "balance": ...}} object per line.
+ * <p>
+ * The body is split into lines as raw bytes, into one buffer of {@code accounts.import.max-line-bytes}, and each line
+ * is parsed from that buffer with Jackson's streaming parser instead of data binding. A longer line is skipped without
+ * being buffered. Valid accounts are created in chunks; malformed or over-long lines, invalid values, duplicates and
+ * balances the repository cannot represent are reported by line number without stopping the import.
+ */
+@Slf4j
+@Component
+public class AccountsImporter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final AccountsService accountsService;
+
+    private final int chunkSize;
+
+    private final int maxReportedErrors;
+
+    private final int maxLineBytes;
+
+    @Autowired
+    public AccountsImporter(AccountsService accountsService,
+                            @Value("${accounts.import.chunk-size:1000}") int chunkSize,
+                            @Value("${accounts.import.max-reported-errors:1000}") int maxReportedErrors,
+                            @Value("${accounts.import.max-line-bytes:4096}") int maxLineBytes) {
+        this.accountsService = accountsService;
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    public AccountImportResult importAccounts(InputStream body) throws IOException {
+        final Import current = new Import();
+        final LineReader reader = new LineReader(body, maxLineBytes);
+        long lineNumber = 0;
+        while (reader.next()) {
+            lineNumber++;
+            if (reader.overlong) {
+                current.reject(lineNumber, "Line exceeds " + maxLineBytes + " bytes.");
+                continue;
+            }
+            if (reader.isBlank()) {
+                continue;
+            }
+            try {
+                current.add(lineNumber, parse(reader.line, reader.length));
+            } catch (JsonProcessingException jpe) {
+                current.reject(lineNumber, "Malformed JSON: " + jpe.getOriginalMessage());
+            } catch (IllegalArgumentException iae) {
+                current.reject(lineNumber, iae.getMessage());
+            }
+        }
+        current.flush();
+        // refusals are only known once their chunk is written, after later lines may have been rejected
+        current.errors.sort(Comparator.comparingLong(AccountImportError::getLine));
+
+        log.info("Imported {} accounts, rejected {}", current.imported, current.rejected);
+        return new AccountImportResult(current.imported, current.rejected, current.errors);
+    }
+
+    private static Account parse(byte[] line, int length) throws IOException {
+        String accountId = null;
+        BigDecimal balance = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(line, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("accountId".equals(field) && value == JsonToken.VALUE_STRING) {
+                    accountId = parser.getText();
+                } else if ("balance".equals(field) && value.isNumeric()) {
+                    balance = parser.getDecimalValue();
+                } else if ("accountId".equals(field) || "balance".equals(field)) {
+                    throw new IllegalArgumentException("Invalid value for " + field + ".");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("Expected one JSON object per line.");
+            }
+        }
+
+        if (accountId == null || accountId.isEmpty()) {
+            throw new IllegalArgumentException("Account id must not be empty.");
+        }
+        if (balance == null) {
+            throw new IllegalArgumentException("Balance must not be null.");
+        }
+        if (balance.signum() < 0) {
+            throw new IllegalArgumentException("Initial balance must be positive.");
+        }
+        return new Account(accountId, balance);
+    }
+
+    /**
+     * Splits the body into lines of at most {@code maxLineBytes}, reusing one buffer for every line. The bytes of a
+     * longer line are skipped up to its end and the line is flagged instead.
+     */
+    private static final class LineReader {
+
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[1 << 16];
+
+        private final int maxLineBytes;
+
+        /** One byte more than a line may hold, for the carriage return of a CRLF line ending. */
+        private final byte[] line;
+
+        private int position;
+
+        private int limit;
+
+        private int length;
+
+        private boolean overlong;
+
+        private LineReader(InputStream in, int maxLineBytes) {
+            this.in = in;
+            this.maxLineBytes = maxLineBytes;
+            this.line = new byte[maxLineBytes + 1];
+        }
+
+        private boolean next() throws IOException {
+            length = 0;
+            overlong = false;
+            boolean started = false;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        return started && end();
+                    }
+                }
+                started = true;
+                final int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                append(start, position - start);
+                if (position < limit) {
+                    position++;
+                    return end();
+                }
+            }
+        }
+
+        private void append(int start, int count) {
+            if (!overlong && length + count > line.length) {
+                overlong = true;
+            }
+            if (!overlong) {
+                System.arraycopy(buffer, start, line, length, count);
+                length += count;
+            }
+        }
+
+        private boolean end() {
+            if (!overlong && length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            overlong |= length > maxLineBytes;
+            return true;
+        }
+
+        private boolean isBlank() {
+            for (int i = 0; i < length; i++) {
+                if (line[i] != ' ' && line[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Progress of one import: the pending chunk with the line number of each account, and the counts so far.
+     */
+    private final class Import {
+
+        private final List<Account> chunk = new ArrayList<>(chunkSize);
+
+        private final long[] chunkLines = new long[chunkSize];
+
+        private final List<AccountImportError> errors = new ArrayList<>();
+
+        private long imported;
+
+        private long rejected;
+
+        private void add(long lineNumber, Account account) {
+            chunkLines[chunk.size()] = lineNumber;
+            chunk.add(account);
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            final Map<Integer, String> refused = accountsService.createAccounts(chunk);
+            imported += chunk.size() - refused.size();
+            for (Map.Entry<Integer, String> refusal : refused.entrySet()) {
+                reject(chunkLines[refusal.getKey()], refusal.getValue());
+            }
+            chunk.clear();
+        }
+
+        private void reject(long lineNumber, String message) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new AccountImportError(lineNumber, message));
+            }
+        }
+    }
+
+}
@@ -2,18 +2,46 @@ package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.MultiLegNotSupportedException;
 import com.db.awmd.challenge.exception.NotEnoughBalanceException;
 import com.db.awmd.challenge.exception.SameAccountTransferException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.exception.UnbalancedTransferException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountDictionary;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AtomicTransferRepository;
+import com.db.awmd.challenge.repository.TransferLedger;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
+@SuppressWarnings("try")
 @Service
 public class AccountsService {
 
@@ -23,69 +51,589 @@ public class AccountsService {
     @Getter
     private final NotificationService notificationService;
 
+    private final AtomicTransferRepository atomicTransferRepository;
+
+    private final LockManager lockManager;
+
+    private final NotificationDispatcher notificationDispatcher;
+
+    private final AccountDictionary accountDictionary;
+
     @Autowired
     private TransferValidation transferValidator;
 
     @Autowired
-    public AccountsService(AccountsRepository accountsRepository, NotificationService notificationService) {
+    private MetricsRegistry metricsRegistry;
+
+    @Autowired(required = false)
+    private ShardedTransferEngine transferEngine;
+
+    @Autowired(required = false)
+    private HotAccountCredits hotAccountCredits;
+
+    @Autowired(required = false)
+    private TransferLedger transferLedger;
+
+    @Autowired
+    private TransferExecutor transferExecutor;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired(required = false)
+    private TransferNetting transferNetting;
+
+    @Value("${accounts.locks.optimistic-retries:3}")
+    private int optimisticRetries;
+
+    @Autowired
+    public AccountsService(AccountsRepository accountsRepository, NotificationService notificationService,
+                           LockManager lockManager, NotificationDispatcher notificationDispatcher,
+                           AccountDictionary accountDictionary) {
         this.accountsRepository = accountsRepository;
         this.notificationService = notificationService;
+        this.lockManager = lockManager;
+        this.notificationDispatcher = notificationDispatcher;
+        this.accountDictionary = accountDictionary;
+        this.atomicTransferRepository = accountsRepository instanceof AtomicTransferRepository
+                ? (AtomicTransferRepository) accountsRepository : null;
+    }
+
+    /**
+     * Gives the accounts recovered by the repository their handles before any request is served.
+     */
+    @PostConstruct
+    public void registerAccounts() {
+        this.accountsRepository.exportAccounts(account -> accountDictionary.register(account.getAccountId()));
+        if (usesTransferNetting()) {
+            transferNetting.start(transfers -> makeNettedTransfers(transfers, false));
+        }
     }
 
     public void createAccount(Account account) {
         this.accountsRepository.createAccount(account);
+        // registered once created, so that a refused id is not given a handle; until then the account is not found
+        this.accountDictionary.register(account.getAccountId());
+        this.accountsRepository.awaitDurability();
+    }
+
+    /**
+     * Creates a chunk of accounts with a single durability wait and returns why each refused account was refused,
+     * by position.
+     */
+    public Map<Integer, String> createAccounts(List<Account> accounts) {
+        final Map<Integer, String> refused = this.accountsRepository.createAccounts(accounts);
+        for (int i = 0; i < accounts.size(); i++) {
+            if (!refused.containsKey(i)) {
+                this.accountDictionary.register(accounts.get(i).getAccountId());
+            }
+        }
+        this.accountsRepository.awaitDurability();
+        return refused;
+    }
+
+    /**
+     * Resolves the ids in one pass, as of one point in time where the repository keeps versions; missing accounts
+     * are left out.
+     */
+    public List<Account> getAccounts(List<String> accountIds) {
+        if (usesHotAccountCredits()) {
+            for (String accountId : accountIds) {
+                if (hotAccountCredits.isHot(accountId)) {
+                    try (LockManager.Locks ignored = lockManager.lockHandles(accountDictionary.handleOf(accountId))) {
+                        hotAccountCredits.fold(accountId);
+                    }
+                }
+            }
+        }
+        return this.accountsRepository.getAccounts(accountIds);
+    }
+
+    /**
+     * Streams a point-in-time view of every account to the sink. Credits still pending for hot accounts are folded
+     * first, so they are part of the view.
+     */
+    public void exportAccounts(Consumer<Account> sink) {
+        if (usesHotAccountCredits()) {
+            hotAccountCredits.foldAll(lockManager);
+        }
+        this.accountsRepository.exportAccounts(sink);
+    }
+
+    /**
+     * Removes every account together with its transfer history, so an id created again starts with none.
+     */
+    public void clearAccounts() {
+        this.accountsRepository.clearAccounts();
+        if (transferLedger != null) {
+            transferLedger.clear();
+        }
+    }
+
+    /**
+     * Returns null if the account does not exist or the ledger is disabled.
+     */
+    public LedgerPage getTransferHistory(String accountId, Long cursor, int limit) {
+        if (transferLedger == null || accountsRepository.getAccount(accountId) == null) {
+            return null;
+        }
+        return transferLedger.page(accountId, cursor, limit);
     }
 
     public Account getAccount(String accountId) {
+        final int handle = accountDictionary.handleOf(accountId);
+        if (usesHotAccountCredits() && hotAccountCredits.isHot(accountId)) {
+            try (LockManager.Locks ignored = lockManager.lockHandles(handle)) {
+                hotAccountCredits.fold(accountId);
+            }
+        }
+        return findAccount(handle, accountId);
+    }
+
 
-        return this.accountsRepository.getAccount(accountId);
+    public void makeTransfer(Transfer transfer)
+            throws AccountNotFoundException, NotEnoughBalanceException, SameAccountTransferException, LockTimeoutException,
+            TooManyRequestsException {
+
+        final int handleFrom = accountDictionary.handleOf(transfer.getAccountFromId());
+        final int handleTo = accountDictionary.handleOf(transfer.getAccountToId());
+        try (AdmissionControl.Permit admitted = admissionControl.admit(handleFrom, handleTo)) {
+            if (usesTransferNetting()) {
+                // the batch records and notifies the transfer itself
+                awaitNetted(transferNetting.submit(transfer));
+                return;
+            }
+            final Account accountFrom = findAccount(handleFrom, transfer.getAccountFromId());
+            final Account accountTo = findAccount(handleTo, transfer.getAccountToId());
+
+            final boolean succeeded;
+            if (atomicTransferRepository != null || transferEngine != null) {
+                succeeded = applyTransfer(accountFrom, accountTo, transfer);
+            } else if (usesHotAccountCredits() && hotAccountCredits.defers(transfer.getAccountToId(), transfer.getBalance())) {
+                // the credit goes to striped cells, so only the debited account needs its lock
+                try (LockManager.Locks ignored = lockManager.lockHandles(handleFrom)) {
+                    hotAccountCredits.fold(transfer.getAccountFromId());
+                    succeeded = applyTransfer(findAccount(handleFrom, transfer.getAccountFromId()), accountTo, transfer, true);
+                }
+            } else if (optimisticRetries > 0
+                    && !(usesHotAccountCredits() && hotAccountCredits.isHot(transfer.getAccountFromId()))) {
+                // pending credits of a hot account must be folded under its lock before its balance is validated
+                succeeded = applyTransferOptimistically(handleFrom, handleTo, transfer);
+            } else {
+                succeeded = applyTransferLocked(handleFrom, handleTo, transfer);
+            }
+
+            if (succeeded) {
+                accountsRepository.awaitDurability();
+                transferCompleted(accountFrom, accountTo, transfer);
+            }
+        }
     }
 
+    /**
+     * Completes once the transfer is applied, without blocking the caller. With the sharded engine the transfer goes
+     * straight to its shard, holding its admission permit until the shard has applied it; otherwise it runs on the
+     * {@link TransferExecutor}. A rejection, including one by {@link AdmissionControl}, completes the future
+     * exceptionally, and a full executor queue is refused with a {@link RejectedExecutionException}.
+     */
+    public CompletableFuture<Void> makeTransferAsync(Transfer transfer) throws RejectedExecutionException {
+        if (transferEngine == null) {
+            return CompletableFuture.runAsync(() -> makeTransfer(transfer), transferExecutor);
+        }
+        final AdmissionControl.Permit admitted;
+        final CompletableFuture<Void> applied;
+        try {
+            admitted = admissionControl.admit(accountDictionary.handleOf(transfer.getAccountFromId()),
+                    accountDictionary.handleOf(transfer.getAccountToId()));
+        } catch (TooManyRequestsException tmre) {
+            final CompletableFuture<Void> refused = new CompletableFuture<>();
+            refused.completeExceptionally(tmre);
+            return refused;
+        }
+        try {
+            applied = transferEngine.submit(transfer);
+        } catch (RuntimeException e) {
+            admitted.close();
+            throw e;
+        }
+        return applied.whenComplete((ignored, rejection) -> {
+            admitted.close();
+            if (rejection != null) {
+                metricsRegistry.counter("transfers.rejected." + rejection.getClass().getSimpleName()).increment();
+            }
+        }).thenRunAsync(() -> transferCompleted(accountsRepository.getAccount(transfer.getAccountFromId()),
+                accountsRepository.getAccount(transfer.getAccountToId()), transfer), transferExecutor::executeOrRun);
+    }
 
-    public void makeTransfer(Transfer transfer) throws AccountNotFoundException, NotEnoughBalanceException, SameAccountTransferException {
+    /**
+     * Runs the transfers in order while holding the locks of every involved account, taken once and in stripe order,
+     * and nets them into one update per account (see {@link #makeNettedTransfers(List, boolean)}). With a lock-free
+     * repository or the sharded engine, each transfer is applied on its own before the next one. A rejected transfer
+     * does not abort the batch; its outcome is reported in the matching result.
+     */
+    public List<TransferResult> makeTransfers(List<Transfer> transfers) {
 
-        final Account accountFrom = accountsRepository.getAccount(transfer.getAccountFromId());
-        final Account accountTo = accountsRepository.getAccount(transfer.getAccountToId());
-        final BigDecimal amount = transfer.getBalance();
+        if (atomicTransferRepository != null || transferEngine != null) {
+            final List<TransferResult> results = new ArrayList<>(transfers.size());
+            final BitSet completed = new BitSet(transfers.size());
+            for (int i = 0; i < transfers.size(); i++) {
+                final Transfer transfer = transfers.get(i);
+                final Account accountFrom = getAccount(transfer.getAccountFromId());
+                final Account accountTo = getAccount(transfer.getAccountToId());
+                results.add(tryTransfer(accountFrom, accountTo, transfer, completed, i, null));
+                if (completed.get(i)) {
+                    transferCompleted(accountFrom, accountTo, transfer);
+                }
+            }
+            return results;
+        }
+        return makeNettedTransfers(transfers, true);
+    }
 
-        if(accountFrom.getAccountId().compareTo(accountTo.getAccountId()) < 1){
-            synchronized (accountFrom){
-                synchronized (accountTo){
-                    transferValidator.validate(accountFrom, accountTo, transfer);
-                    boolean succeeded = accountsRepository.updateAccounts(Arrays.asList(
-                            new AccountUpdate(accountFrom.getAccountId(), amount.negate()),
-                            new AccountUpdate(accountTo.getAccountId(), amount)
-                    ));
-                    if (succeeded) {
-                        notificationService.notifyAboutTransfer(accountFrom, "Transfer for AccountId "
-                                + accountTo.getAccountId() + " is done with balance of " + transfer.getBalance());
-                        notificationService.notifyAboutTransfer(accountTo, "Transfer from AccountId + "
-                                + accountFrom.getAccountId() + "has done with balance of " + transfer.getBalance() + " in your account.");
-                    }
+    /**
+     * Validates each transfer against the running balances left by the transfers before it, then applies the net
+     * flow of every account as one repository update, so that transfers going back and forth between the same
+     * accounts cost a single update per account. Transfers netted by {@link TransferNetting} have been admitted one
+     * by one already.
+     */
+    private List<TransferResult> makeNettedTransfers(List<Transfer> transfers, boolean admit) {
+
+        final List<TransferResult> results = new ArrayList<>(transfers.size());
+        final BitSet completed = new BitSet(transfers.size());
+
+        // handles of transfer i at 2i and 2i + 1, and the accounts behind them at the same positions
+        final int[] handles = new int[transfers.size() * 2];
+        for (int i = 0; i < transfers.size(); i++) {
+            handles[2 * i] = accountDictionary.handleOf(transfers.get(i).getAccountFromId());
+            handles[2 * i + 1] = accountDictionary.handleOf(transfers.get(i).getAccountToId());
+        }
+        final Account[] accounts = new Account[handles.length];
+        final Map<Integer, Account> lockedAccounts = new HashMap<>();
+        final Map<String, BigDecimal> flows = new LinkedHashMap<>();
+
+        try (AdmissionControl.Permit admitted = admit ? admissionControl.admit(handles) : null;
+             LockManager.Locks ignored = lockManager.lockHandles(handles)) {
+            for (int i = 0; i < handles.length; i++) {
+                if (handles[i] >= 0) {
+                    accounts[i] = lockedAccounts.computeIfAbsent(handles[i], handle -> {
+                        final String accountId = accountDictionary.accountIdOf(handle);
+                        if (usesHotAccountCredits()) {
+                            hotAccountCredits.fold(accountId);
+                        }
+                        return accountsRepository.getAccount(handle, accountId);
+                    });
+                }
+            }
+            for (int i = 0; i < transfers.size(); i++) {
+                final Transfer transfer = transfers.get(i);
+                results.add(tryTransfer(accounts[2 * i], accounts[2 * i + 1], transfer, completed, i, flows));
+                if (completed.get(i)) {
+                    // the copies read above stand in for the balances of the later transfers in the batch
+                    accounts[2 * i].setBalance(accounts[2 * i].getBalance().subtract(transfer.getBalance()));
+                    accounts[2 * i + 1].setBalance(accounts[2 * i + 1].getBalance().add(transfer.getBalance()));
+                }
+            }
+
+            final List<AccountUpdate> accountUpdates = new ArrayList<>(flows.size());
+            for (Map.Entry<String, BigDecimal> flow : flows.entrySet()) {
+                if (flow.getValue().signum() != 0) {
+                    accountUpdates.add(new AccountUpdate(flow.getKey(), flow.getValue()));
                 }
             }
+            if (!accountUpdates.isEmpty()) {
+                accountsRepository.updateAccounts(accountUpdates);
+            }
+        }
+
+        if (!completed.isEmpty()) {
+            accountsRepository.awaitDurability();
+        }
+        for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+            transferCompleted(accounts[2 * i], accounts[2 * i + 1], transfers.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Applies every leg or none. Legs of the same account are netted first; the locks of all involved accounts are
+     * taken once, in stripe order, and the balances change in one repository update. Once applied, the legs are
+     * recorded and notified as transfers from the debited to the credited accounts.
+     */
+    public void makeMultiLegTransfer(MultiLegTransfer multiLegTransfer)
+            throws AccountNotFoundException, NotEnoughBalanceException, UnbalancedTransferException,
+            SameAccountTransferException, LockTimeoutException, TooManyRequestsException,
+            MultiLegNotSupportedException {
 
-        } else {
-            synchronized (accountTo){
-                synchronized (accountFrom){
-                    transferValidator.validate(accountFrom, accountTo, transfer);
-                    boolean succeeded = accountsRepository.updateAccounts(Arrays.asList(
-                            new AccountUpdate(accountFrom.getAccountId(), amount.negate()),
-                            new AccountUpdate(accountTo.getAccountId(), amount)
-                    ));
-                    if (succeeded) {
-                        notificationService.notifyAboutTransfer(accountFrom, "Transfer for AccountId "
-                                + accountTo.getAccountId() + " is done with balance of " + transfer.getBalance());
-                        notificationService.notifyAboutTransfer(accountTo, "Transfer from AccountId + "
-                                + accountFrom.getAccountId() + "has done with balance of " + transfer.getBalance() + " in your account.");
+        final List<AccountUpdate> legs;
+        final Map<String, Account> accounts = new HashMap<>();
+        try {
+            legs = netLegs(multiLegTransfer);
+            if (transferEngine != null) {
+                throw new MultiLegNotSupportedException("Multi-leg transfers are not supported by the sharded engine.");
+            }
+            if (atomicTransferRepository != null) {
+                atomicTransferRepository.transfer(legs);
+                for (AccountUpdate leg : legs) {
+                    accounts.put(leg.getAccountId(), accountsRepository.getAccount(leg.getAccountId()));
+                }
+            } else {
+                final int[] handles = new int[legs.size()];
+                for (int i = 0; i < legs.size(); i++) {
+                    handles[i] = accountDictionary.handleOf(legs.get(i).getAccountId());
+                }
+                try (AdmissionControl.Permit admitted = admissionControl.admit(handles);
+                     LockManager.Locks ignored = lockManager.lockHandles(handles)) {
+                    for (int i = 0; i < legs.size(); i++) {
+                        final AccountUpdate leg = legs.get(i);
+                        if (usesHotAccountCredits()) {
+                            hotAccountCredits.fold(leg.getAccountId());
+                        }
+                        final Account account = findAccount(handles[i], leg.getAccountId());
+                        if (account == null) {
+                            throw new AccountNotFoundException("Account " + leg.getAccountId() + " not found.");
+                        }
+                        if (account.getBalance().add(leg.getBalance()).compareTo(BigDecimal.ZERO) < 0) {
+                            throw new NotEnoughBalanceException("Not enough balance in account "
+                                    + account.getAccountId() + " balance=" + account.getBalance());
+                        }
+                        accounts.put(leg.getAccountId(), account);
                     }
+                    accountsRepository.updateAccounts(legs);
                 }
             }
+        } catch (RuntimeException rejection) {
+            metricsRegistry.counter("transfers.rejected." + rejection.getClass().getSimpleName()).increment();
+            throw rejection;
+        }
+
+        accountsRepository.awaitDurability();
+        for (Transfer transfer : toTransfers(legs)) {
+            transferCompleted(accounts.get(transfer.getAccountFromId()), accounts.get(transfer.getAccountToId()), transfer);
+        }
+    }
+
+    private static List<AccountUpdate> netLegs(MultiLegTransfer multiLegTransfer) {
+        final Map<String, BigDecimal> netAmounts = new LinkedHashMap<>();
+        BigDecimal total = BigDecimal.ZERO;
+        for (TransferLeg leg : multiLegTransfer.getLegs()) {
+            netAmounts.merge(leg.getAccountId(), leg.getAmount(), BigDecimal::add);
+            total = total.add(leg.getAmount());
+        }
+        if (total.signum() != 0) {
+            throw new UnbalancedTransferException("Legs of a multi-leg transfer must sum to zero, but sum to " + total + ".");
+        }
+
+        final List<AccountUpdate> legs = new ArrayList<>(netAmounts.size());
+        netAmounts.forEach((accountId, amount) -> {
+            if (amount.signum() != 0) {
+                legs.add(new AccountUpdate(accountId, amount));
+            }
+        });
+        if (legs.isEmpty()) {
+            throw new SameAccountTransferException("Multi-leg transfer moves no funds between different accounts.");
         }
+        return legs;
+    }
 
+    /**
+     * Splits netted legs into transfers, filling the credits in order from the debits in order.
+     */
+    private static List<Transfer> toTransfers(List<AccountUpdate> legs) {
+        final List<Transfer> transfers = new ArrayList<>();
+        int debit = nextLeg(legs, -1, -1);
+        int credit = nextLeg(legs, -1, 1);
+        BigDecimal debitLeft = debit < 0 ? BigDecimal.ZERO : legs.get(debit).getBalance().negate();
+        BigDecimal creditLeft = credit < 0 ? BigDecimal.ZERO : legs.get(credit).getBalance();
+        while (debit >= 0 && credit >= 0) {
+            final BigDecimal amount = debitLeft.min(creditLeft);
+            transfers.add(new Transfer(legs.get(debit).getAccountId(), legs.get(credit).getAccountId(), amount));
+            debitLeft = debitLeft.subtract(amount);
+            creditLeft = creditLeft.subtract(amount);
+            if (debitLeft.signum() == 0) {
+                debit = nextLeg(legs, debit, -1);
+                debitLeft = debit < 0 ? BigDecimal.ZERO : legs.get(debit).getBalance().negate();
+            }
+            if (creditLeft.signum() == 0) {
+                credit = nextLeg(legs, credit, 1);
+                creditLeft = credit < 0 ? BigDecimal.ZERO : legs.get(credit).getBalance();
+            }
+        }
+        return transfers;
+    }
 
+    private static int nextLeg(List<AccountUpdate> legs, int after, int signum) {
+        for (int i = after + 1; i < legs.size(); i++) {
+            if (legs.get(i).getBalance().signum() == signum) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
+    /**
+     * Applies the transfer, or with {@code flows} given, only validates it and adds its amounts to the flows of its
+     * accounts for the caller to apply.
+     */
+    private TransferResult tryTransfer(Account accountFrom, Account accountTo, Transfer transfer,
+                                       BitSet completed, int index, Map<String, BigDecimal> flows) {
+        try {
+            if (flows == null) {
+                if (applyTransfer(accountFrom, accountTo, transfer)) {
+                    completed.set(index);
+                }
+            } else {
+                validate(accountFrom, accountTo, transfer);
+                flows.merge(accountFrom.getAccountId(), transfer.getBalance().negate(), BigDecimal::add);
+                flows.merge(accountTo.getAccountId(), transfer.getBalance(), BigDecimal::add);
+                completed.set(index);
+            }
+            return TransferResult.completed(transfer);
+        } catch (AccountNotFoundException ane) {
+            return TransferResult.rejected(transfer, TransferStatus.ACCOUNT_NOT_FOUND, ane.getMessage());
+        } catch (NotEnoughBalanceException nbe) {
+            return TransferResult.rejected(transfer, TransferStatus.NOT_ENOUGH_BALANCE, nbe.getMessage());
+        } catch (SameAccountTransferException ex) {
+            return TransferResult.rejected(transfer, TransferStatus.SAME_ACCOUNT, ex.getMessage());
+        } catch (InvalidAmountException iae) {
+            return TransferResult.rejected(transfer, TransferStatus.INVALID_AMOUNT, iae.getMessage());
+        }
+    }
 
+    /**
+     * Runs once the transfer is applied and its locks are released, so neither step lengthens the lock hold time.
+     */
+    private void transferCompleted(Account accountFrom, Account accountTo, Transfer transfer) {
+        if (transferLedger != null) {
+            transferLedger.record(transfer);
+        }
+        notificationDispatcher.dispatch(accountFrom, accountTo, transfer);
+    }
+
+    /**
+     * An id without a handle has no account yet, even if one is being created concurrently: it is only locked
+     * under its handle, so it must not be touched before the handle is seen.
+     */
+    private Account findAccount(int handle, String accountId) {
+        return handle < 0 ? null : accountsRepository.getAccount(handle, accountId);
+    }
+
+    private boolean usesTransferNetting() {
+        return transferNetting != null && atomicTransferRepository == null && transferEngine == null;
+    }
+
+    /**
+     * Turns the outcome of a netted transfer back into the exception {@link #makeTransfer(Transfer)} would throw.
+     */
+    private void awaitNetted(CompletableFuture<TransferResult> netted) {
+        final TransferResult result;
+        try {
+            result = netted.join();
+        } catch (CompletionException ce) {
+            throw ce.getCause() instanceof RuntimeException ? (RuntimeException) ce.getCause() : ce;
+        }
+        switch (result.getStatus()) {
+            case COMPLETED:
+                return;
+            case ACCOUNT_NOT_FOUND:
+                throw new AccountNotFoundException(result.getMessage());
+            case NOT_ENOUGH_BALANCE:
+                throw new NotEnoughBalanceException(result.getMessage());
+            case SAME_ACCOUNT:
+                throw new SameAccountTransferException(result.getMessage());
+            case INVALID_AMOUNT:
+                throw new InvalidAmountException(result.getMessage());
+            default:
+                throw new IllegalStateException("Unexpected outcome of netted transfer: " + result.getStatus());
+        }
+    }
+
+    private boolean usesHotAccountCredits() {
+        return hotAccountCredits != null && atomicTransferRepository == null && transferEngine == null;
+    }
+
+    /**
+     * Reads the accounts again once they are locked, as the repository hands out copies.
+     */
+    private boolean applyTransferLocked(int handleFrom, int handleTo, Transfer transfer) {
+        try (LockManager.Locks ignored = lockManager.lockHandles(handleFrom, handleTo)) {
+            if (usesHotAccountCredits()) {
+                hotAccountCredits.fold(transfer.getAccountFromId());
+            }
+            return applyTransfer(findAccount(handleFrom, transfer.getAccountFromId()),
+                    findAccount(handleTo, transfer.getAccountToId()), transfer);
+        }
+    }
+
+    /**
+     * Validates against the balances read under the stripe versions, without locking, and only locks to commit if
+     * neither stripe changed in between. A transfer failing validation on a consistent read is rejected without
+     * taking any lock. After {@code accounts.locks.optimistic-retries} conflicts it falls back to locking.
+     */
+    private boolean applyTransferOptimistically(int handleFrom, int handleTo, Transfer transfer) {
+        for (int attempt = 0; attempt < optimisticRetries; attempt++) {
+            final LockManager.Versions versions = lockManager.readVersions(handleFrom, handleTo);
+            final Account accountFrom = findAccount(handleFrom, transfer.getAccountFromId());
+            final Account accountTo = findAccount(handleTo, transfer.getAccountToId());
+            try {
+                transferValidator.validate(accountFrom, accountTo, transfer);
+            } catch (RuntimeException rejection) {
+                if (versions.validate()) {
+                    metricsRegistry.counter("transfers.rejected." + rejection.getClass().getSimpleName()).increment();
+                    throw rejection;
+                }
+                metricsRegistry.counter("transfers.optimistic.conflicts").increment();
+                continue;
+            }
+            try (LockManager.Locks locks = versions.tryCommit()) {
+                if (locks != null) {
+                    return applyTransfer(accountFrom, accountTo, transfer);
+                }
+            }
+            metricsRegistry.counter("transfers.optimistic.conflicts").increment();
+        }
+        metricsRegistry.counter("transfers.optimistic.fallbacks").increment();
+        return applyTransferLocked(handleFrom, handleTo, transfer);
+    }
+
+    private boolean applyTransfer(Account accountFrom, Account accountTo, Transfer transfer) {
+        return applyTransfer(accountFrom, accountTo, transfer, false);
+    }
+
+    private void validate(Account accountFrom, Account accountTo, Transfer transfer) {
+        try {
+            transferValidator.validate(accountFrom, accountTo, transfer);
+        } catch (RuntimeException rejection) {
+            metricsRegistry.counter("transfers.rejected." + rejection.getClass().getSimpleName()).increment();
+            throw rejection;
+        }
+    }
+
+    private boolean applyTransfer(Account accountFrom, Account accountTo, Transfer transfer, boolean deferCredit) {
+        final BigDecimal amount = transfer.getBalance();
+        try {
+            if (transferEngine != null) {
+                transferEngine.transfer(transfer);
+                return true;
+            }
+            transferValidator.validate(accountFrom, accountTo, transfer);
+            if (atomicTransferRepository != null) {
+                atomicTransferRepository.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), amount);
+                return true;
+            }
+        } catch (RuntimeException rejection) {
+            metricsRegistry.counter("transfers.rejected." + rejection.getClass().getSimpleName()).increment();
+            throw rejection;
+        }
+        if (deferCredit) {
+            accountsRepository.updateAccounts(Collections.singletonList(
+                    new AccountUpdate(accountFrom.getAccountId(), amount.negate())));
+            hotAccountCredits.credit(accountTo.getAccountId(), amount);
+            return true;
+        }
+        return accountsRepository.updateAccounts(Arrays.asList(
+                new AccountUpdate(accountFrom.getAccountId(), amount.negate()),
+                new AccountUpdate(accountTo.getAccountId(), amount)
+        ));
     }
 
 }
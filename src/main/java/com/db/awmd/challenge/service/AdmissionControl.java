@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the transfers in flight, overall and per account, so that threads piling up on one hammered account cannot
+ * take every servlet thread with them. A transfer over either limit is refused at once with a
+ * {@link TooManyRequestsException} instead of waiting.
+ * <p>
+ * Accounts are counted per lock stripe: accounts sharing a stripe share its limit, just as they share its lock.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final int[] NO_STRIPES = new int[0];
+
+    private final LockManager lockManager;
+
+    private final Semaphore inFlight;
+
+    private final AtomicIntegerArray perStripe;
+
+    private final int maxPerAccount;
+
+    private final long retryAfterSeconds;
+
+    private final LongAdder rejectedInFlight;
+
+    private final LongAdder rejectedPerAccount;
+
+    @Autowired
+    public AdmissionControl(LockManager lockManager, MetricsRegistry metricsRegistry,
+                            @Value("${accounts.admission.max-in-flight:1024}") int maxInFlight,
+                            @Value("${accounts.admission.max-per-account:32}") int maxPerAccount,
+                            @Value("${accounts.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.lockManager = lockManager;
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+        this.perStripe = maxPerAccount > 0 ? new AtomicIntegerArray(lockManager.getStripeCount()) : null;
+        this.maxPerAccount = maxPerAccount;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.rejectedInFlight = metricsRegistry.counter("admission.rejected.in-flight");
+        this.rejectedPerAccount = metricsRegistry.counter("admission.rejected.per-account");
+        if (inFlight != null) {
+            metricsRegistry.gauge("admission.in-flight", () -> maxInFlight - inFlight.availablePermits());
+        }
+    }
+
+    /**
+     * Admits a transfer touching the accounts behind the handles; {@link Permit#close() closing} the permit lets the
+     * next one in. Unknown handles are not counted.
+     */
+    public Permit admit(int... handles) throws TooManyRequestsException {
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            rejectedInFlight.increment();
+            throw new TooManyRequestsException("Too many transfers in flight, retry later.", retryAfterSeconds);
+        }
+        if (perStripe == null) {
+            return new Permit(NO_STRIPES);
+        }
+
+        final int[] stripes = lockManager.stripesOf(handles);
+        for (int i = 0; i < stripes.length; i++) {
+            if (perStripe.incrementAndGet(stripes[i]) > maxPerAccount) {
+                for (int j = i; j >= 0; j--) {
+                    perStripe.decrementAndGet(stripes[j]);
+                }
+                if (inFlight != null) {
+                    inFlight.release();
+                }
+                rejectedPerAccount.increment();
+                throw new TooManyRequestsException("Too many transfers waiting for the same account, retry later.",
+                        retryAfterSeconds);
+            }
+        }
+        return new Permit(stripes);
+    }
+
+    public final class Permit implements AutoCloseable {
+
+        private final int[] stripes;
+
+        private boolean closed;
+
+        private Permit(int[] stripes) {
+            this.stripes = stripes;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int stripe : stripes) {
+                perStripe.decrementAndGet(stripe);
+            }
+            if (inFlight != null) {
+                inFlight.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransactionJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Credits for accounts marked as hot, such as fee collectors, which receive a large share of all transfers. Instead
+ * of locking the receiving account, a credit is added in minor units to one of several cells picked by thread, and
+ * the cells are folded into the balance whenever the account is read or debited under its lock.
+ * <p>
+ * Deferred credits are not journaled until folded, so they are disabled while the transaction journal is enabled.
+ */
+@Slf4j
+@Component
+public class HotAccountCredits {
+
+    /** Longs per cell, keeping neighbouring cells on different cache lines. */
+    private static final int PADDING = 16;
+
+    private final AccountsRepository accountsRepository;
+
+    private final ConcurrentMap<String, CreditCells> hotAccounts = new ConcurrentHashMap<>();
+
+    private final int scale;
+
+    private final int cellCount;
+
+    @Autowired(required = false)
+    private TransactionJournal journal;
+
+    @Autowired
+    public HotAccountCredits(AccountsRepository accountsRepository,
+                             @Value("${accounts.hot.ids:}") String[] hotAccountIds,
+                             @Value("${accounts.hot.cells:0}") int cellCount,
+                             @Value("${accounts.balance-scale:2}") int scale) {
+        this.accountsRepository = accountsRepository;
+        this.scale = scale;
+        final int cells = cellCount > 0 ? cellCount : Runtime.getRuntime().availableProcessors();
+        this.cellCount = cells <= 1 ? 1 : Integer.highestOneBit(cells - 1) << 1;
+        for (String accountId : hotAccountIds) {
+            if (!accountId.trim().isEmpty()) {
+                markHot(accountId.trim());
+            }
+        }
+    }
+
+    @PostConstruct
+    public void checkJournal() {
+        if (journal != null && !hotAccounts.isEmpty()) {
+            log.warn("Hot account credits are disabled while the transaction journal is enabled.");
+        }
+    }
+
+    public void markHot(String accountId) {
+        hotAccounts.putIfAbsent(accountId, new CreditCells(cellCount));
+    }
+
+    public boolean isHot(String accountId) {
+        return journal == null && hotAccounts.containsKey(accountId);
+    }
+
+    /**
+     * True if a credit of this amount to the account can be deferred, i.e. the account is hot and the amount is
+     * representable in minor units.
+     */
+    public boolean defers(String accountId, BigDecimal amount) {
+        return isHot(accountId) && toMinorUnits(amount) >= 0;
+    }
+
+    /**
+     * Adds the credit without locking the account; only valid after {@link #defers} accepted it.
+     */
+    public void credit(String accountId, BigDecimal amount) {
+        hotAccounts.get(accountId).add(toMinorUnits(amount));
+    }
+
+    /**
+     * Applies the pending credits of a hot account to its balance; the caller must hold the account's lock.
+     */
+    public void fold(String accountId) {
+        final CreditCells cells = journal == null ? hotAccounts.get(accountId) : null;
+        if (cells == null) {
+            return;
+        }
+        final long units = cells.drain();
+        if (units != 0) {
+            accountsRepository.updateAccounts(Collections.singletonList(
+                    new AccountUpdate(accountId, BigDecimal.valueOf(units, scale))));
+        }
+    }
+
+    /**
+     * Folds the pending credits of every hot account, taking each account's lock in turn.
+     */
+    @SuppressWarnings("try")
+    public void foldAll(LockManager lockManager) {
+        for (String accountId : hotAccounts.keySet()) {
+            try (LockManager.Locks ignored = lockManager.lock(accountId)) {
+                fold(accountId);
+            }
+        }
+    }
+
+    private long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.movePointRight(scale).longValueExact();
+        } catch (ArithmeticException ex) {
+            return -1;
+        }
+    }
+
+    private static final class CreditCells {
+
+        private final AtomicLongArray cells;
+
+        private final int mask;
+
+        private CreditCells(int count) {
+            this.cells = new AtomicLongArray(count * PADDING);
+            this.mask = count - 1;
+        }
+
+        private void add(long units) {
+            final int cell = (int) Thread.currentThread().getId() & mask;
+            cells.addAndGet(cell * PADDING, units);
+        }
+
+        private long drain() {
+            long units = 0;
+            for (int i = 0; i < cells.length(); i += PADDING) {
+                units += cells.getAndSet(i, 0);
+            }
+            return units;
+        }
+    }
+
+}
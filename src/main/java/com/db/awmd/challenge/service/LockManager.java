@@ -0,0 +1,253 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.metrics.LatencyRecorder;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountDictionary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed pool of striped locks keyed by account handle; ids without a handle fall back to their hash. Stripes are
+ * always acquired in ascending index order, so two callers locking overlapping sets of accounts can never deadlock.
+ * <p>
+ * Stripes are {@link StampedLock}s, which are not reentrant: a thread must not lock accounts it already holds. Their
+ * stamps double as versions for {@link #readVersions(int...) optimistic} transfers.
+ */
+@Component
+public class LockManager {
+
+    private final StampedLock[] stripes;
+
+    private final int mask;
+
+    private final long timeoutNanos;
+
+    private final LatencyRecorder waitTime;
+
+    private final LatencyRecorder holdTime;
+
+    private final AccountDictionary accountDictionary;
+
+    public LockManager(int stripeCount, long timeoutMillis, MetricsRegistry metricsRegistry) {
+        this(stripeCount, timeoutMillis, metricsRegistry, null);
+    }
+
+    @Autowired
+    public LockManager(@Value("${accounts.locks.stripes:1024}") int stripeCount,
+                       @Value("${accounts.locks.timeout-ms:5000}") long timeoutMillis,
+                       MetricsRegistry metricsRegistry, AccountDictionary accountDictionary) {
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.waitTime = metricsRegistry.timer("accounts.locks.wait");
+        this.holdTime = metricsRegistry.timer("accounts.locks.hold");
+        this.accountDictionary = accountDictionary;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public int stripeOf(String accountId) {
+        final int handle = accountDictionary == null ? AccountDictionary.UNKNOWN : accountDictionary.handleOf(accountId);
+        if (handle >= 0) {
+            return stripeOf(handle);
+        }
+        int hash = accountId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Handles are dense, so consecutive accounts land on distinct stripes.
+     */
+    public int stripeOf(int handle) {
+        return handle & mask;
+    }
+
+    public Locks lock(String... accountIds) throws LockTimeoutException {
+        return lockAll(Arrays.asList(accountIds));
+    }
+
+    public Locks lockAll(Collection<String> accountIds) throws LockTimeoutException {
+        int[] indexes = new int[accountIds.size()];
+        int count = 0;
+        for (String accountId : accountIds) {
+            indexes[count++] = stripeOf(accountId);
+        }
+        return lockStripes(indexes, count);
+    }
+
+    /**
+     * Locks the accounts behind the handles; {@link AccountDictionary#UNKNOWN} handles are skipped, as there is no
+     * account to protect.
+     */
+    public Locks lockHandles(int... handles) throws LockTimeoutException {
+        Locks locks = new Locks(stripesOf(handles));
+        locks.acquire();
+        return locks;
+    }
+
+    /**
+     * Returns the distinct stripes of the handles in ascending order, skipping {@link AccountDictionary#UNKNOWN}
+     * handles.
+     */
+    public int[] stripesOf(int... handles) {
+        int[] indexes = new int[handles.length];
+        int count = 0;
+        for (int handle : handles) {
+            if (handle >= 0) {
+                indexes[count++] = stripeOf(handle);
+            }
+        }
+        return distinctStripes(indexes, count);
+    }
+
+    /**
+     * Records the current version of the stripes behind the handles without blocking anybody. Reads made afterwards
+     * are consistent if the versions still {@link Versions#validate() validate}.
+     */
+    public Versions readVersions(int... handles) {
+        final int[] indexes = stripesOf(handles);
+        final long[] stamps = new long[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            stamps[i] = stripes[indexes[i]].tryOptimisticRead();
+        }
+        return new Versions(indexes, stamps);
+    }
+
+    private Locks lockStripes(int[] indexes, int count) {
+        Locks locks = new Locks(distinctStripes(indexes, count));
+        locks.acquire();
+        return locks;
+    }
+
+    private static int[] distinctStripes(int[] indexes, int count) {
+        Arrays.sort(indexes, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        return Arrays.copyOf(indexes, distinct);
+    }
+
+    public final class Versions {
+
+        private final int[] indexes;
+
+        private final long[] stamps;
+
+        private Versions(int[] indexes, long[] stamps) {
+            this.indexes = indexes;
+            this.stamps = stamps;
+        }
+
+        /**
+         * True if no stripe was write-locked since the versions were read.
+         */
+        public boolean validate() {
+            for (int i = 0; i < indexes.length; i++) {
+                if (!stripes[indexes[i]].validate(stamps[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Turns the versions into write locks, in stripe order, if none of the stripes changed meanwhile. Returns
+         * null without waiting if one did or is locked.
+         */
+        public Locks tryCommit() {
+            final long requestedAt = System.nanoTime();
+            final long[] writeStamps = new long[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                writeStamps[i] = stamps[i] == 0 ? 0 : stripes[indexes[i]].tryConvertToWriteLock(stamps[i]);
+                if (writeStamps[i] == 0) {
+                    while (i > 0) {
+                        i--;
+                        stripes[indexes[i]].unlockWrite(writeStamps[i]);
+                    }
+                    return null;
+                }
+            }
+            final Locks locks = new Locks(indexes, writeStamps);
+            locks.acquiredAt = System.nanoTime();
+            waitTime.record(locks.acquiredAt - requestedAt);
+            return locks;
+        }
+    }
+
+    public final class Locks implements AutoCloseable {
+
+        private final int[] indexes;
+
+        private final long[] stamps;
+
+        private int acquired;
+
+        private long acquiredAt;
+
+        private Locks(int[] indexes) {
+            this.indexes = indexes;
+            this.stamps = new long[indexes.length];
+        }
+
+        private Locks(int[] indexes, long[] stamps) {
+            this.indexes = indexes;
+            this.stamps = stamps;
+            this.acquired = indexes.length;
+        }
+
+        private void acquire() {
+            final long requestedAt = System.nanoTime();
+            final long deadline = requestedAt + timeoutNanos;
+            try {
+                for (; acquired < indexes.length; acquired++) {
+                    StampedLock stripe = stripes[indexes[acquired]];
+                    long stamp = stripe.tryWriteLock();
+                    if (stamp == 0) {
+                        stamp = stripe.tryWriteLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                    if (stamp == 0) {
+                        close();
+                        throw new LockTimeoutException("Accounts are busy, could not lock them within "
+                                + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms.");
+                    }
+                    stamps[acquired] = stamp;
+                }
+            } catch (InterruptedException ie) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new LockTimeoutException("Interrupted while waiting for account locks.");
+            }
+            acquiredAt = System.nanoTime();
+            waitTime.record(acquiredAt - requestedAt);
+        }
+
+        @Override
+        public void close() {
+            if (acquiredAt != 0 && acquired == indexes.length) {
+                holdTime.recordSince(acquiredAt);
+            }
+            while (acquired > 0) {
+                --acquired;
+                stripes[indexes[acquired]].unlockWrite(stamps[acquired]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands transfer notifications to worker threads through a bounded queue, so that a slow {@link NotificationService}
+ * is never called while account locks are held. Workers drain the queue in batches.
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher {
+
+    public enum OverflowPolicy {
+        /** Wait for room in the queue. */
+        BLOCK,
+        /** Discard the notification and count it as dropped. */
+        DROP,
+        /**
+         * Park the notification in an overflow queue drained after the main queue; once that holds its capacity too,
+         * discard the notification and count it as dropped.
+         */
+        SPILL
+    }
+
+    private final NotificationService notificationService;
+
+    private final BlockingQueue<TransferNotification> queue;
+
+    private final Queue<TransferNotification> spill = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger spillDepth = new AtomicInteger();
+
+    private final int spillCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int batchSize;
+
+    private final Thread[] workers;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean running;
+
+    @Autowired(required = false)
+    private MetricsRegistry metricsRegistry;
+
+    @Autowired
+    public NotificationDispatcher(NotificationService notificationService,
+                                  @Value("${notifications.workers:2}") int workerCount,
+                                  @Value("${notifications.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${notifications.batch-size:256}") int batchSize,
+                                  @Value("${notifications.overflow:BLOCK}") OverflowPolicy overflowPolicy,
+                                  @Value("${notifications.spill-capacity:100000}") int spillCapacity) {
+        this.notificationService = notificationService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.spillCapacity = spillCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.workers = new Thread[workerCount];
+    }
+
+    @PostConstruct
+    public void start() {
+        if (metricsRegistry != null) {
+            metricsRegistry.gauge("notifications.queue.depth", this::getQueueDepth);
+            metricsRegistry.gauge("notifications.spill.depth", this::getSpillDepth);
+            metricsRegistry.gauge("notifications.enqueued", this::getEnqueued);
+            metricsRegistry.gauge("notifications.dropped", this::getDropped);
+            metricsRegistry.gauge("notifications.spilled", this::getSpilled);
+            metricsRegistry.gauge("notifications.delivered", this::getDelivered);
+            metricsRegistry.gauge("notifications.failed", this::getFailed);
+        }
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::drain, "notification-dispatcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public void dispatch(Account accountFrom, Account accountTo, Transfer transfer) {
+        TransferNotification notification = new TransferNotification(accountFrom, accountTo, transfer);
+        enqueued.increment();
+        if (queue.offer(notification)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(notification);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+                break;
+            case SPILL:
+                // the slot is taken before the notification is added, so the depth never undercounts the queue
+                if (spillDepth.incrementAndGet() > spillCapacity) {
+                    spillDepth.decrementAndGet();
+                    dropped.increment();
+                    break;
+                }
+                spill.add(notification);
+                spilled.increment();
+                break;
+            default:
+                dropped.increment();
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getSpillDepth() {
+        return spillDepth.get();
+    }
+
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private void drain() {
+        final List<TransferNotification> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || spillDepth.get() > 0) {
+            try {
+                TransferNotification first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                TransferNotification spilledNotification;
+                while (batch.size() < batchSize && (spilledNotification = spill.poll()) != null) {
+                    spillDepth.decrementAndGet();
+                    batch.add(spilledNotification);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            for (TransferNotification notification : batch) {
+                deliver(notification);
+            }
+            batch.clear();
+        }
+    }
+
+    private void deliver(TransferNotification notification) {
+        final Account accountFrom = notification.accountFrom;
+        final Account accountTo = notification.accountTo;
+        final Transfer transfer = notification.transfer;
+        try {
+            notificationService.notifyAboutTransfer(accountFrom, "Transfer for AccountId "
+                    + accountTo.getAccountId() + " is done with balance of " + transfer.getBalance());
+            notificationService.notifyAboutTransfer(accountTo, "Transfer from AccountId + "
+                    + accountFrom.getAccountId() + "has done with balance of " + transfer.getBalance() + " in your account.");
+            delivered.increment();
+        } catch (RuntimeException ex) {
+            failed.increment();
+            log.error("Failed to send notifications for transfer {}", transfer, ex);
+        }
+    }
+
+    private static final class TransferNotification {
+
+        private final Account accountFrom;
+        private final Account accountTo;
+        private final Transfer transfer;
+
+        private TransferNotification(Account accountFrom, Account accountTo, Transfer transfer) {
+            this.accountFrom = accountFrom;
+            this.accountTo = accountTo;
+            this.transfer = transfer;
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Partitions the accounts over shard threads by account id. Each shard is the only writer of the balances it owns
+ * and takes transfers from its own {@link TransferRingBuffer}, so no account locks are needed.
+ * <p>
+ * A transfer is published to the shard owning the debited account. If the credited account lives on the same shard,
+ * both balances are updated in one step; otherwise the shard debits and hands the credit to the owning shard through
+ * an unbounded inbox, so that two shards never block on each other's ring. Callers are answered after the credit,
+ * once the shard has waited for the repository's durability. With the journal enabled, a cross-shard transfer is
+ * journaled as two records.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.engine.type", havingValue = "sharded")
+public class ShardedTransferEngine {
+
+    private static final int MAX_DRAIN = 256;
+    private static final int SPINS_BEFORE_PARK = 64;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AccountsRepository accountsRepository;
+
+    private final TransferValidation transferValidator;
+
+    private final Shard[] shards;
+
+    private volatile boolean running;
+
+    @Autowired
+    public ShardedTransferEngine(AccountsRepository accountsRepository, TransferValidation transferValidator,
+                                 MetricsRegistry metricsRegistry,
+                                 @Value("${accounts.engine.shards:0}") int shardCount,
+                                 @Value("${accounts.engine.ring-size:4096}") int ringSize) {
+        this.accountsRepository = accountsRepository;
+        this.transferValidator = transferValidator;
+        final int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, ringSize);
+            metricsRegistry.gauge("accounts.engine.shard-" + i + ".depth", shards[i].ring::size);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    int shardOf(String accountId) {
+        final int hash = accountId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Runs the transfer on the shards and waits for it; a rejection is rethrown as it was raised on the shard.
+     */
+    public void transfer(Transfer transfer) {
+        try {
+            submit(transfer).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes the transfer to the shard owning the debited account, waiting for a free slot if its ring is full.
+     */
+    public CompletableFuture<Void> submit(Transfer transfer) {
+        if (!running) {
+            throw new IllegalStateException("Transfer engine is not running.");
+        }
+        final ShardTask task = new ShardTask(transfer);
+        final Shard shard = shards[shardOf(transfer.getAccountFromId())];
+        while (!shard.ring.offer(task)) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        shard.wake();
+        return task.result;
+    }
+
+    private static final class ShardTask {
+
+        private final Transfer transfer;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private boolean debited;
+
+        private ShardTask(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    private final class Shard implements Runnable {
+
+        private final int index;
+
+        private final TransferRingBuffer<ShardTask> ring;
+
+        private final Queue<ShardTask> credits = new ConcurrentLinkedQueue<>();
+
+        private final List<ShardTask> applied = new ArrayList<>();
+
+        private final Thread thread;
+
+        private volatile boolean parked;
+
+        private Shard(int index, int ringSize) {
+            this.index = index;
+            this.ring = new TransferRingBuffer<>(ringSize);
+            this.thread = new Thread(this, "transfer-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void wake() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private boolean idle() {
+            return credits.isEmpty() && ring.isEmpty();
+        }
+
+        @Override
+        public void run() {
+            int idleSpins = 0;
+            while (running || !idle()) {
+                int processed = 0;
+                ShardTask credit;
+                while (processed < MAX_DRAIN && (credit = credits.poll()) != null) {
+                    process(credit);
+                    processed++;
+                }
+                processed += ring.drain(this::process, MAX_DRAIN);
+
+                if (!applied.isEmpty()) {
+                    complete();
+                }
+                if (processed > 0) {
+                    idleSpins = 0;
+                } else if (++idleSpins < SPINS_BEFORE_PARK) {
+                    Thread.yield();
+                } else {
+                    parked = true;
+                    if (running && idle()) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    parked = false;
+                }
+            }
+        }
+
+        private void process(ShardTask task) {
+            final Transfer transfer = task.transfer;
+            final BigDecimal amount = transfer.getBalance();
+            try {
+                if (task.debited) {
+                    accountsRepository.updateAccounts(Collections.singletonList(
+                            new AccountUpdate(transfer.getAccountToId(), amount)));
+                    applied.add(task);
+                    return;
+                }
+
+                final Account accountFrom = accountsRepository.getAccount(transfer.getAccountFromId());
+                final Account accountTo = accountsRepository.getAccount(transfer.getAccountToId());
+                transferValidator.validate(accountFrom, accountTo, transfer);
+
+                final int creditShard = shardOf(transfer.getAccountToId());
+                if (creditShard == index) {
+                    accountsRepository.updateAccounts(Arrays.asList(
+                            new AccountUpdate(transfer.getAccountFromId(), amount.negate()),
+                            new AccountUpdate(transfer.getAccountToId(), amount)));
+                    applied.add(task);
+                } else {
+                    accountsRepository.updateAccounts(Collections.singletonList(
+                            new AccountUpdate(transfer.getAccountFromId(), amount.negate())));
+                    task.debited = true;
+                    shards[creditShard].credits.add(task);
+                    shards[creditShard].wake();
+                }
+            } catch (RuntimeException e) {
+                task.result.completeExceptionally(e);
+            }
+        }
+
+        private void complete() {
+            try {
+                accountsRepository.awaitDurability();
+                for (ShardTask task : applied) {
+                    task.result.complete(null);
+                }
+            } catch (RuntimeException e) {
+                log.error("Shard {} could not make {} transfers durable", index, applied.size(), e);
+                for (ShardTask task : applied) {
+                    task.result.completeExceptionally(e);
+                }
+            }
+            applied.clear();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.db.awmd.challenge.service;
+
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: level {@code l} has {@code 2^bits} buckets of {@code 2^(bits * l)} ticks each, enough
+ * levels to cover any deadline. An entry is placed in the lowest level whose span reaches its deadline, and moves
+ * down a level whenever the wheel reaches its bucket, so adding, removing and expiring are constant time however
+ * many entries are pending and however far ahead they are due. Not thread-safe.
+ */
+final class TimingWheel<T> {
+
+    static final class Entry<T> {
+
+        final T value;
+
+        private final long deadline;
+
+        private Entry<T> previous;
+
+        private Entry<T> next;
+
+        private int level = -1;
+
+        private int index;
+
+        private Entry(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+
+    private final int bits;
+
+    private final int mask;
+
+    private final Entry<T>[][] buckets;
+
+    private long currentTick;
+
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(int bits, long startTick) {
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.buckets = new Entry[(63 + bits - 1) / bits][1 << bits];
+        this.currentTick = startTick;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a value due at the deadline tick; a deadline that has already passed is due at the next tick.
+     */
+    Entry<T> add(T value, long deadline) {
+        final Entry<T> entry = new Entry<>(value, Math.max(deadline, currentTick + 1));
+        place(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Returns false if the entry has already expired or been removed.
+     */
+    boolean remove(Entry<T> entry) {
+        if (entry.level < 0) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to the tick, adding the values that came due on the way to {@code due}.
+     */
+    void advanceTo(long tick, List<T> due) {
+        while (currentTick < tick) {
+            final long now = ++currentTick;
+            int top = 0;
+            while (top < buckets.length - 1 && (now & ((1L << (bits * (top + 1))) - 1)) == 0) {
+                top++;
+            }
+            // higher levels first, so their entries can still drop into the buckets cascaded after them
+            for (int level = top; level >= 1; level--) {
+                Entry<T> entry = detach(level, (int) ((now >>> (bits * level)) & mask));
+                while (entry != null) {
+                    final Entry<T> next = entry.next;
+                    place(entry);
+                    entry = next;
+                }
+            }
+            Entry<T> entry = detach(0, (int) (now & mask));
+            while (entry != null) {
+                final Entry<T> next = entry.next;
+                entry.previous = null;
+                entry.next = null;
+                due.add(entry.value);
+                size--;
+                entry = next;
+            }
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        final long delta = entry.deadline - currentTick;
+        int level = 0;
+        while (level < buckets.length - 1 && (delta >>> (bits * (level + 1))) != 0) {
+            level++;
+        }
+        entry.level = level;
+        entry.index = (int) ((entry.deadline >>> (bits * level)) & mask);
+        entry.previous = null;
+        entry.next = buckets[level][entry.index];
+        if (entry.next != null) {
+            entry.next.previous = entry;
+        }
+        buckets[level][entry.index] = entry;
+    }
+
+    private void unlink(Entry<T> entry) {
+        if (entry.previous == null) {
+            buckets[entry.level][entry.index] = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+        entry.level = -1;
+    }
+
+    private Entry<T> detach(int level, int index) {
+        final Entry<T> head = buckets[level][index];
+        buckets[level][index] = null;
+        for (Entry<T> entry = head; entry != null; entry = entry.next) {
+            entry.level = -1;
+        }
+        return head;
+    }
+
+}
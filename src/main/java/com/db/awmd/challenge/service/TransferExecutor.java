@@ -0,0 +1,64 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool running asynchronously submitted transfers, so that waiting for account locks does not hold a servlet
+ * thread. Work beyond the queue capacity is refused with a {@link RejectedExecutionException}.
+ */
+@Component
+public class TransferExecutor implements Executor {
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public TransferExecutor(MetricsRegistry metricsRegistry,
+                            @Value("${accounts.async.threads:0}") int threadCount,
+                            @Value("${accounts.async.queue-capacity:10000}") int queueCapacity) {
+        final int threads = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors() * 2;
+        final AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            final Thread thread = new Thread(runnable, "transfer-executor-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsRegistry.gauge("accounts.async.queue.depth", () -> executor.getQueue().size());
+        metricsRegistry.gauge("accounts.async.active", executor::getActiveCount);
+    }
+
+    @Override
+    public void execute(Runnable command) throws RejectedExecutionException {
+        executor.execute(command);
+    }
+
+    /**
+     * Runs the command on the calling thread instead of refusing it when the queue is full; for follow-up work of a
+     * transfer that has already been applied.
+     */
+    public void executeOrRun(Runnable command) {
+        try {
+            executor.execute(command);
+        } catch (RejectedExecutionException ree) {
+            command.run();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+}
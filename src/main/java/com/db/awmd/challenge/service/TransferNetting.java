@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Buffers single transfers for a short window and hands them to the batch runner together, which validates each of
+ * them against the running balances and applies the net flow of every account as one update under one set of locks.
+ * Each transfer still gets its own {@link TransferResult}.
+ * <p>
+ * A transfer waits at most {@code accounts.netting.window-micros} before its batch runs, which is added to its
+ * latency in exchange for fewer lock acquisitions and repository updates when the same accounts see many transfers.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.netting.enabled", havingValue = "true")
+public class TransferNetting {
+
+    private final MetricsRegistry metricsRegistry;
+
+    private final long windowNanos;
+
+    private final int maxBatch;
+
+    private final BlockingQueue<Pending> queue;
+
+    private Thread flusher;
+
+    private volatile boolean running;
+
+    @Autowired
+    public TransferNetting(MetricsRegistry metricsRegistry,
+                           @Value("${accounts.netting.window-micros:2000}") long windowMicros,
+                           @Value("${accounts.netting.max-batch:1000}") int maxBatch,
+                           @Value("${accounts.netting.queue-capacity:65536}") int queueCapacity) {
+        this.metricsRegistry = metricsRegistry;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        metricsRegistry.gauge("transfers.netting.queue.depth", queue::size);
+    }
+
+    /**
+     * Starts flushing batches to the runner, which must return one result per transfer, in order.
+     */
+    public void start(Function<List<Transfer>, List<TransferResult>> runner) {
+        running = true;
+        flusher = new Thread(() -> flush(runner), "transfer-netting");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Completes with the transfer's result once its batch has run, or exceptionally if the whole batch failed, e.g.
+     * because its accounts could not be locked in time.
+     */
+    public CompletableFuture<TransferResult> submit(Transfer transfer) throws TooManyRequestsException {
+        final Pending pending = new Pending(transfer);
+        if (!queue.offer(pending)) {
+            metricsRegistry.counter("transfers.netting.rejected").increment();
+            throw new TooManyRequestsException("Too many transfers waiting to be netted.", 1);
+        }
+        return pending.result;
+    }
+
+    private void flush(Function<List<Transfer>, List<TransferResult>> runner) {
+        final List<Pending> batch = new ArrayList<>(maxBatch);
+        final List<Transfer> transfers = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                final Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (queue.drainTo(batch, maxBatch - batch.size()) == 0) {
+                        final Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                run(runner, batch, transfers);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            batch.clear();
+            transfers.clear();
+        }
+        // whatever is left, including a batch still collecting, is refused rather than left waiting
+        queue.drainTo(batch);
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(
+                    new TooManyRequestsException("Transfer netting is shutting down.", 1));
+        }
+    }
+
+    private void run(Function<List<Transfer>, List<TransferResult>> runner, List<Pending> batch,
+                     List<Transfer> transfers) {
+        for (Pending pending : batch) {
+            transfers.add(pending.transfer);
+        }
+        final List<TransferResult> results;
+        try {
+            results = runner.apply(transfers);
+        } catch (RuntimeException failure) {
+            log.debug("Netted batch of {} transfers failed", batch.size(), failure);
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(failure);
+            }
+            return;
+        }
+        metricsRegistry.counter("transfers.netting.batches").increment();
+        metricsRegistry.counter("transfers.netting.transfers").add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results.get(i));
+        }
+    }
+
+    private static final class Pending {
+
+        private final Transfer transfer;
+
+        private final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+        private Pending(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+}
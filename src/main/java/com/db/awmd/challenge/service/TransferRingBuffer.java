@@ -0,0 +1,79 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer ring of pre-sized slots. Producers claim a sequence with a CAS on the
+ * tail and publish into the slot; the consumer reads published slots in sequence order and frees them. Neither
+ * side takes a lock, and the only contended word is the tail.
+ */
+final class TransferRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong head = new AtomicLong();
+
+    TransferRingBuffer(int capacity) {
+        final int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * Publishes the element, or returns false if every slot is taken.
+     */
+    boolean offer(E element) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) sequence & mask, element);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code limit} published elements to the consumer in sequence order; must only be called from the
+     * consuming thread.
+     */
+    int drain(Consumer<E> consumer, int limit) {
+        long sequence = head.get();
+        int drained = 0;
+        while (drained < limit) {
+            final int index = (int) sequence & mask;
+            final E element = slots.get(index);
+            if (element == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            head.lazySet(++sequence);
+            drained++;
+            consumer.accept(element);
+        }
+        return drained;
+    }
+
+    /**
+     * True when the next slot to consume is not yet published. A claimed but unpublished slot also counts as empty.
+     */
+    boolean isEmpty() {
+        return slots.get((int) head.get() & mask) == null;
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+}
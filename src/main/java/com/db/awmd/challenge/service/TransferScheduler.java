@@ -0,0 +1,253 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.SameAccountTransferException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds future-dated transfers in a {@link TimingWheel} and releases them through
+ * {@link AccountsService#makeTransfers(List)} in batches once they are due. A transfer refused because its accounts
+ * are busy is retried a second later; any other outcome is final and counted under
+ * {@code scheduled.released.<status>}, or under {@code scheduled.failed} if the whole batch failed.
+ * <p>
+ * Scheduled transfers are kept in memory only and are lost on restart.
+ */
+@Slf4j
+@Component
+public class TransferScheduler {
+
+    private static final Comparator<ScheduledTransfer> BY_EXECUTION =
+            Comparator.comparingLong(ScheduledTransfer::getExecuteAt).thenComparingLong(ScheduledTransfer::getId);
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final AccountsService accountsService;
+
+    private final MetricsRegistry metricsRegistry;
+
+    private final long tickMillis;
+
+    private final int batchSize;
+
+    private final TimingWheel<ScheduledTransfer> wheel;
+
+    /** Changed under the scheduler's monitor together with the wheel, but read without it. */
+    private final Map<Long, TimingWheel.Entry<ScheduledTransfer>> pending = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<Long, ScheduledTransfer>> pendingByAccount = new HashMap<>();
+
+    private long nextId = 1;
+
+    private Thread ticker;
+
+    private volatile boolean running;
+
+    @Autowired
+    public TransferScheduler(AccountsService accountsService, MetricsRegistry metricsRegistry,
+                             @Value("${accounts.scheduler.tick-ms:10}") long tickMillis,
+                             @Value("${accounts.scheduler.wheel-bits:8}") int wheelBits,
+                             @Value("${accounts.scheduler.batch-size:1000}") int batchSize) {
+        this(accountsService, metricsRegistry, tickMillis, wheelBits, batchSize, System.currentTimeMillis());
+    }
+
+    TransferScheduler(AccountsService accountsService, MetricsRegistry metricsRegistry, long tickMillis, int wheelBits,
+                      int batchSize, long startMillis) {
+        this.accountsService = accountsService;
+        this.metricsRegistry = metricsRegistry;
+        this.tickMillis = tickMillis;
+        this.batchSize = batchSize;
+        this.wheel = new TimingWheel<>(wheelBits, startMillis / tickMillis);
+        metricsRegistry.gauge("scheduled.pending", this::getPendingCount);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        ticker = new Thread(this::tick, "transfer-scheduler");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        ticker.interrupt();
+        ticker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public ScheduledTransfer schedule(Transfer transfer, long executeAt) throws SameAccountTransferException {
+        if (transfer.getAccountFromId().equals(transfer.getAccountToId())) {
+            throw new SameAccountTransferException("Transfer in same account is not allowed.");
+        }
+        synchronized (this) {
+            final ScheduledTransfer scheduledTransfer = new ScheduledTransfer(nextId++, transfer, executeAt);
+            addPending(scheduledTransfer, tickOf(executeAt));
+            return scheduledTransfer;
+        }
+    }
+
+    /**
+     * Returns the cancelled transfer, or null if there is no pending transfer with that id, e.g. because it has
+     * already been released.
+     */
+    public synchronized ScheduledTransfer cancel(long id) {
+        final TimingWheel.Entry<ScheduledTransfer> entry = pending.get(id);
+        if (entry == null) {
+            return null;
+        }
+        wheel.remove(entry);
+        removePending(entry.value);
+        return entry.value;
+    }
+
+    /**
+     * Returns the earliest pending transfers, of the account if given. Only the account's own transfers are looked
+     * at, under the scheduler's monitor; all pending transfers are scanned without holding it, so a transfer released
+     * or cancelled meanwhile may still be listed.
+     */
+    public List<ScheduledTransfer> getScheduledTransfers(String accountId, int limit) {
+        final PriorityQueue<ScheduledTransfer> latestFirst = new PriorityQueue<>(limit + 1, BY_EXECUTION.reversed());
+        if (accountId == null) {
+            for (TimingWheel.Entry<ScheduledTransfer> entry : pending.values()) {
+                offer(latestFirst, entry.value, limit);
+            }
+        } else {
+            synchronized (this) {
+                final Map<Long, ScheduledTransfer> ofAccount = pendingByAccount.get(accountId);
+                if (ofAccount != null) {
+                    for (ScheduledTransfer scheduledTransfer : ofAccount.values()) {
+                        offer(latestFirst, scheduledTransfer, limit);
+                    }
+                }
+            }
+        }
+        final List<ScheduledTransfer> earliest = new ArrayList<>(latestFirst);
+        earliest.sort(BY_EXECUTION);
+        return earliest;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Releases every transfer due at or before the time.
+     */
+    void releaseDue(long nowMillis) {
+        final List<ScheduledTransfer> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advanceTo(nowMillis / tickMillis, due);
+            for (ScheduledTransfer scheduledTransfer : due) {
+                removePending(scheduledTransfer);
+            }
+        }
+        due.sort(BY_EXECUTION);
+        for (int from = 0; from < due.size(); from += batchSize) {
+            release(due.subList(from, Math.min(due.size(), from + batchSize)));
+        }
+    }
+
+    private void release(List<ScheduledTransfer> batch) {
+        final List<Transfer> transfers = new ArrayList<>(batch.size());
+        for (ScheduledTransfer scheduledTransfer : batch) {
+            transfers.add(scheduledTransfer.getTransfer());
+        }
+        try {
+            for (TransferResult result : accountsService.makeTransfers(transfers)) {
+                metricsRegistry.counter("scheduled.released." + result.getStatus()).increment();
+            }
+        } catch (LockTimeoutException | TooManyRequestsException busy) {
+            log.warn("Retrying {} scheduled transfers: {}", batch.size(), busy.getMessage());
+            metricsRegistry.counter("scheduled.retried").add(batch.size());
+            synchronized (this) {
+                final long retryAt = wheel.getCurrentTick() + Math.max(1, RETRY_DELAY_MILLIS / tickMillis);
+                for (ScheduledTransfer scheduledTransfer : batch) {
+                    addPending(scheduledTransfer, retryAt);
+                }
+            }
+        } catch (RuntimeException e) {
+            // the batch may have been applied in part, so it is not retried
+            log.error("Could not release {} scheduled transfers {} to {}", batch.size(), batch.get(0).getId(),
+                    batch.get(batch.size() - 1).getId(), e);
+            metricsRegistry.counter("scheduled.failed").add(batch.size());
+        }
+    }
+
+    private void addPending(ScheduledTransfer scheduledTransfer, long tick) {
+        pending.put(scheduledTransfer.getId(), wheel.add(scheduledTransfer, tick));
+        index(scheduledTransfer.getTransfer().getAccountFromId(), scheduledTransfer);
+        index(scheduledTransfer.getTransfer().getAccountToId(), scheduledTransfer);
+    }
+
+    private void removePending(ScheduledTransfer scheduledTransfer) {
+        pending.remove(scheduledTransfer.getId());
+        unindex(scheduledTransfer.getTransfer().getAccountFromId(), scheduledTransfer);
+        unindex(scheduledTransfer.getTransfer().getAccountToId(), scheduledTransfer);
+    }
+
+    private void index(String accountId, ScheduledTransfer scheduledTransfer) {
+        pendingByAccount.computeIfAbsent(accountId, id -> new HashMap<>(4)).put(scheduledTransfer.getId(),
+                scheduledTransfer);
+    }
+
+    private void unindex(String accountId, ScheduledTransfer scheduledTransfer) {
+        final Map<Long, ScheduledTransfer> ofAccount = pendingByAccount.get(accountId);
+        if (ofAccount != null && ofAccount.remove(scheduledTransfer.getId()) != null && ofAccount.isEmpty()) {
+            pendingByAccount.remove(accountId);
+        }
+    }
+
+    /**
+     * Keeps the {@code limit} earliest transfers offered so far, the latest of them at the head.
+     */
+    private static void offer(PriorityQueue<ScheduledTransfer> latestFirst, ScheduledTransfer candidate, int limit) {
+        if (latestFirst.size() < limit) {
+            latestFirst.add(candidate);
+        } else if (BY_EXECUTION.compare(candidate, latestFirst.peek()) < 0) {
+            latestFirst.poll();
+            latestFirst.add(candidate);
+        }
+    }
+
+    private void tick() {
+        while (running) {
+            try {
+                releaseDue(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                log.error("Could not release scheduled transfers", e);
+            }
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException ie) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ticks are rounded up, so that no transfer is released before its time.
+     */
+    private long tickOf(long millis) {
+        return (millis + tickMillis - 1) / tickMillis;
+    }
+
+}
@@ -1,16 +1,35 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatch;
+import com.db.awmd.challenge.domain.TransferResult;
 
 import com.db.awmd.challenge.exception.DuplicateAccountException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.MultiLegNotSupportedException;
 import com.db.awmd.challenge.exception.NotEnoughBalanceException;
 import com.db.awmd.challenge.exception.SameAccountTransferException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.exception.UnbalancedTransferException;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 
+import com.db.awmd.challenge.service.AccountsImporter;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferScheduler;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,54 +37,240 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int MAX_HISTORY_PAGE = 1000;
+
+    private static final int MAX_MULTI_GET = 1000;
+
     private final AccountsService accountsService;
 
+    private final IdempotencyCache idempotencyCache;
+
+    private final AccountsImporter accountsImporter;
+
+    private final TransferScheduler transferScheduler;
+
     @Autowired
-    public AccountsController(AccountsService accountsService) {
+    public AccountsController(AccountsService accountsService, IdempotencyCache idempotencyCache,
+                              AccountsImporter accountsImporter, TransferScheduler transferScheduler) {
         this.accountsService = accountsService;
+        this.idempotencyCache = idempotencyCache;
+        this.accountsImporter = accountsImporter;
+        this.transferScheduler = transferScheduler;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
-        log.info("Account will be created... {}", account);
+        log.debug("Account will be created... {}", account);
 
         try {
             this.accountsService.createAccount(account);
         } catch (DuplicateAccountException duplicateAccountException) {
             return new ResponseEntity<>(duplicateAccountException.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (InvalidAmountException iae) {
+            return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
         }
 
         return new ResponseEntity<>(HttpStatus.CREATED);
     }
 
+    @PostMapping(path = "/import", consumes = {NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<Object> importAccounts(HttpServletRequest request) throws IOException {
+        log.debug("Importing accounts");
+        AccountImportResult result = this.accountsImporter.importAccounts(request.getInputStream());
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    @GetMapping(params = "ids")
+    public ResponseEntity<Object> getAccounts(@RequestParam List<String> ids) {
+        log.debug("Retrieving {} accounts", ids.size());
+        if (ids.size() > MAX_MULTI_GET) {
+            return new ResponseEntity<>("At most " + MAX_MULTI_GET + " accounts can be retrieved at once.",
+                    HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(this.accountsService.getAccounts(ids), HttpStatus.OK);
+    }
+
+    @GetMapping(path = "/export")
+    public ResponseEntity<StreamingResponseBody> exportAccounts(@RequestParam(defaultValue = "csv") String format) {
+        log.debug("Exporting accounts as {}", format);
+        if ("ndjson".equalsIgnoreCase(format)) {
+            return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.parseMediaType(NDJSON_VALUE))
+                    .body(new AccountsExportBody(this.accountsService, AccountsExportBody.Format.NDJSON));
+        }
+        return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.parseMediaType("text/csv"))
+                .body(new AccountsExportBody(this.accountsService, AccountsExportBody.Format.CSV));
+    }
+
     @GetMapping(path = "/{accountId}")
     public Account getAccount(@PathVariable String accountId) {
-        log.info("Retrieving account with id {}", accountId);
+        log.debug("Retrieving account with id {}", accountId);
         return this.accountsService.getAccount(accountId);
     }
 
+    @GetMapping(path = "/{accountId}/transfers")
+    public ResponseEntity<Object> getTransfers(@PathVariable String accountId,
+                                               @RequestParam(required = false) Long cursor,
+                                               @RequestParam(defaultValue = "50") int limit) {
+        log.debug("Retrieving transfers of account {} before {}", accountId, cursor);
+        if (limit < 1 || limit > MAX_HISTORY_PAGE) {
+            return new ResponseEntity<>("Limit must be between 1 and " + MAX_HISTORY_PAGE + ".", HttpStatus.BAD_REQUEST);
+        }
+        LedgerPage page = this.accountsService.getTransferHistory(accountId, cursor, limit);
+        if (page == null) {
+            return new ResponseEntity<>("Account " + accountId + " not found.", HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
     @PutMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Object> doTransfer(@RequestBody @Valid Transfer transfer) {
-        log.info("Making transfer {}", transfer);
+    public ResponseEntity<Object> doTransfer(@RequestBody @Valid Transfer transfer,
+                                             @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        log.debug("Making transfer {}", transfer);
+
+        if (idempotencyKey == null) {
+            return makeTransfer(transfer);
+        }
+        return idempotencyCache.execute(idempotencyKey, transfer, () -> makeTransfer(transfer));
+    }
+
+    /**
+     * Answers once the transfer has run on the service's executor or shard, so the servlet thread is released while
+     * the transfer waits for account locks.
+     */
+    @PutMapping(path = "/transfer/async", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Object>> doTransferAsync(@RequestBody @Valid Transfer transfer,
+                                                                     @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        log.debug("Making asynchronous transfer {}", transfer);
+
+        if (idempotencyKey == null) {
+            return makeTransferAsync(transfer);
+        }
+        return idempotencyCache.executeAsync(idempotencyKey, transfer, () -> makeTransferAsync(transfer));
+    }
+
+    private CompletableFuture<ResponseEntity<Object>> makeTransferAsync(Transfer transfer) {
+        final CompletableFuture<Void> transferred;
+        try {
+            transferred = this.accountsService.makeTransferAsync(transfer);
+        } catch (RejectedExecutionException ree) {
+            return CompletableFuture.completedFuture(
+                    new ResponseEntity<>("Too many transfers in progress.", HttpStatus.SERVICE_UNAVAILABLE));
+        }
+        return transferred.handle((ignored, failure) -> transferResponse(() -> {
+            if (failure instanceof CompletionException && failure.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) failure.getCause();
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }));
+    }
 
+    @PutMapping(path = "/transfers/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> doMultiLegTransfer(@RequestBody @Valid MultiLegTransfer multiLegTransfer,
+                                                     @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        log.debug("Making multi-leg transfer of {} legs", multiLegTransfer.getLegs().size());
+
+        if (idempotencyKey == null) {
+            return makeMultiLegTransfer(multiLegTransfer);
+        }
+        return idempotencyCache.execute(idempotencyKey, multiLegTransfer, () -> makeMultiLegTransfer(multiLegTransfer));
+    }
+
+    private ResponseEntity<Object> makeMultiLegTransfer(MultiLegTransfer multiLegTransfer) {
         try {
-            this.accountsService.makeTransfer(transfer);
+            return transferResponse(() -> this.accountsService.makeMultiLegTransfer(multiLegTransfer));
+        } catch (MultiLegNotSupportedException mle) {
+            return new ResponseEntity<>(mle.getMessage(), HttpStatus.NOT_IMPLEMENTED);
+        }
+    }
+
+    private ResponseEntity<Object> makeTransfer(Transfer transfer) {
+        return transferResponse(() -> this.accountsService.makeTransfer(transfer));
+    }
+
+    private ResponseEntity<Object> transferResponse(Runnable transfer) {
+        try {
+            transfer.run();
         } catch (AccountNotFoundException ane) {
             return new ResponseEntity<>(ane.getMessage(), HttpStatus.NOT_FOUND);
         } catch (NotEnoughBalanceException nbe) {
             return new ResponseEntity<>(nbe.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
         } catch (SameAccountTransferException ex) {
             return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (InvalidAmountException iae) {
+            return new ResponseEntity<>(iae.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (UnbalancedTransferException ute) {
+            return new ResponseEntity<>(ute.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (LockTimeoutException lte) {
+            return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (TooManyRequestsException tmre) {
+            return tooManyRequests(tmre);
         }
 
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
+    private static ResponseEntity<Object> tooManyRequests(TooManyRequestsException tmre) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf(tmre.getRetryAfterSeconds()))
+                .body(tmre.getMessage());
+    }
+
+    @PostMapping(path = "/transfers/scheduled", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> scheduleTransfer(@RequestBody @Valid ScheduledTransfer scheduledTransfer) {
+        log.debug("Scheduling transfer {} at {}", scheduledTransfer.getTransfer(), scheduledTransfer.getExecuteAt());
+
+        try {
+            return new ResponseEntity<>(this.transferScheduler.schedule(scheduledTransfer.getTransfer(),
+                    scheduledTransfer.getExecuteAt()), HttpStatus.CREATED);
+        } catch (SameAccountTransferException ex) {
+            return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping(path = "/transfers/scheduled")
+    public ResponseEntity<Object> getScheduledTransfers(@RequestParam(required = false) String accountId,
+                                                        @RequestParam(defaultValue = "50") int limit) {
+        log.debug("Retrieving scheduled transfers of {}", accountId);
+        if (limit < 1 || limit > MAX_HISTORY_PAGE) {
+            return new ResponseEntity<>("Limit must be between 1 and " + MAX_HISTORY_PAGE + ".", HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(this.transferScheduler.getScheduledTransfers(accountId, limit), HttpStatus.OK);
+    }
+
+    @DeleteMapping(path = "/transfers/scheduled/{id}")
+    public ResponseEntity<Object> cancelScheduledTransfer(@PathVariable long id) {
+        log.debug("Cancelling scheduled transfer {}", id);
+        final ScheduledTransfer cancelled = this.transferScheduler.cancel(id);
+        if (cancelled == null) {
+            return new ResponseEntity<>("No pending scheduled transfer " + id + ".", HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(cancelled, HttpStatus.OK);
+    }
+
+    @PutMapping(path = "/transfers/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> doTransfers(@RequestBody @Valid TransferBatch transferBatch) {
+        log.debug("Making batch of {} transfers", transferBatch.getTransfers().size());
+
+        try {
+            List<TransferResult> results = this.accountsService.makeTransfers(transferBatch.getTransfers());
+            return new ResponseEntity<>(results, HttpStatus.OK);
+        } catch (LockTimeoutException lte) {
+            return new ResponseEntity<>(lte.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (TooManyRequestsException tmre) {
+            return tooManyRequests(tmre);
+        }
+    }
 
 }
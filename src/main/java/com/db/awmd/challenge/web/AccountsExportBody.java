@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes every account to the response as it is visited, either as CSV with a header line or as one JSON object
+ * per line.
+ */
+class AccountsExportBody implements StreamingResponseBody {
+
+    enum Format {
+        CSV, NDJSON
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final AccountsService accountsService;
+
+    private final Format format;
+
+    AccountsExportBody(AccountsService accountsService, Format format) {
+        this.accountsService = accountsService;
+        this.format = format;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            if (format == Format.CSV) {
+                writer.write("accountId,balance\n");
+                accountsService.exportAccounts(account -> writeCsv(writer, account));
+            } else {
+                final JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+                generator.setRootValueSeparator(null);
+                accountsService.exportAccounts(account -> writeJson(generator, writer, account));
+                generator.flush();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private static void writeCsv(Writer writer, Account account) {
+        try {
+            final String accountId = account.getAccountId();
+            if (accountId.indexOf(',') >= 0 || accountId.indexOf('"') >= 0 || accountId.indexOf('\n') >= 0) {
+                writer.write('"');
+                writer.write(accountId.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(accountId);
+            }
+            writer.write(',');
+            writer.write(account.getBalance().toPlainString());
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeJson(JsonGenerator generator, Writer writer, Account account) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("accountId", account.getAccountId());
+            generator.writeNumberField("balance", account.getBalance());
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the responses of requests carrying an {@code Idempotency-Key} header, so that a retried request gets the
+ * stored response instead of being executed again. A retry arriving while the first request is still running waits
+ * for its outcome.
+ * <p>
+ * Entries expire after a TTL and are evicted oldest first once the entry count or the estimated memory budget is
+ * exceeded. Only final outcomes are remembered: server errors and 429 are forgotten, so that a request refused
+ * with one of them can be retried under the same key.
+ */
+@Component
+public class IdempotencyCache {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    /** Rough per-entry cost of the map node, queue node, entry and stored response. */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final long ttlNanos;
+
+    @Autowired
+    public IdempotencyCache(MetricsRegistry metricsRegistry,
+                            @Value("${idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${idempotency.max-memory-mb:64}") long maxMemoryMb,
+                            @Value("${idempotency.ttl-seconds:86400}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxMemoryMb << 20;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        metricsRegistry.gauge("idempotency.hits", hits::sum);
+        metricsRegistry.gauge("idempotency.misses", misses::sum);
+        metricsRegistry.gauge("idempotency.evictions", evictions::sum);
+        metricsRegistry.gauge("idempotency.size", size::get);
+        metricsRegistry.gauge("idempotency.estimated-bytes", estimatedBytes::get);
+    }
+
+    /**
+     * Runs the action unless a response is already stored for the key. Reusing a key for a different request is
+     * answered with 422 without running the action.
+     */
+    public ResponseEntity<Object> execute(String key, Object request, Supplier<ResponseEntity<Object>> action) {
+        try {
+            return executeAsync(key, request, () -> CompletableFuture.completedFuture(action.get())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #execute}, for actions completing later; a duplicate of a running request completes with it
+     * instead of blocking a thread.
+     */
+    public CompletableFuture<ResponseEntity<Object>> executeAsync(String key, Object request,
+                                                                  Supplier<CompletableFuture<ResponseEntity<Object>>> action) {
+        final Entry entry = new Entry(key, request, System.nanoTime());
+        Entry existing = entries.putIfAbsent(key, entry);
+        while (existing != null && isExpired(existing, entry.createdAt)) {
+            remove(existing);
+            existing = entries.putIfAbsent(key, entry);
+        }
+
+        if (existing != null) {
+            if (!existing.request.equals(request)) {
+                return CompletableFuture.completedFuture(new ResponseEntity<>(
+                        "Idempotency-Key " + key + " was already used for a different request.",
+                        HttpStatus.UNPROCESSABLE_ENTITY));
+            }
+            return existing.response.handle((response, failure) -> {
+                if (failure != null || !isFinal(response)) {
+                    // the first request failed and was forgotten, so this one takes its place
+                    return null;
+                }
+                hits.increment();
+                return replay(response);
+            }).thenCompose(replayed -> replayed != null
+                    ? CompletableFuture.completedFuture(replayed)
+                    : executeAsync(key, request, action));
+        }
+
+        misses.increment();
+        size.incrementAndGet();
+        estimatedBytes.addAndGet(entry.bytes);
+        insertionOrder.add(entry);
+        evict(entry.createdAt);
+
+        final CompletableFuture<ResponseEntity<Object>> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            remove(entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        return response.whenComplete((completed, failure) -> {
+            if (failure != null || !isFinal(completed)) {
+                remove(entry);
+            }
+            if (failure != null) {
+                entry.response.completeExceptionally(failure);
+            } else {
+                entry.response.complete(completed);
+            }
+        });
+    }
+
+    private static boolean isFinal(ResponseEntity<Object> response) {
+        final HttpStatus status = response.getStatusCode();
+        return !status.is5xxServerError() && status != HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    private static ResponseEntity<Object> replay(ResponseEntity<Object> response) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.set(REPLAYED_HEADER, "true");
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null && (oldest.removed || isExpired(oldest, now)
+                || size.get() > maxEntries || estimatedBytes.get() > maxBytes)) {
+            if (insertionOrder.remove(oldest) && !oldest.removed) {
+                remove(oldest);
+                evictions.increment();
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            entry.removed = true;
+            size.decrementAndGet();
+            estimatedBytes.addAndGet(-entry.bytes);
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt > ttlNanos;
+    }
+
+    private static final class Entry {
+
+        private final String key;
+
+        private final Object request;
+
+        private final long createdAt;
+
+        private final int bytes;
+
+        private final CompletableFuture<ResponseEntity<Object>> response = new CompletableFuture<>();
+
+        private volatile boolean removed;
+
+        private Entry(String key, Object request, long createdAt) {
+            this.key = key;
+            this.request = request;
+            this.createdAt = createdAt;
+            this.bytes = ENTRY_OVERHEAD_BYTES + 2 * (key.length() + String.valueOf(request).length());
+        }
+    }
+
+}
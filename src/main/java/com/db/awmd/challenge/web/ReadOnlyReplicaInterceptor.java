@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.web;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Turns away every request but reads on a replication follower, whose accounts only change through replication.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.replication.role", havingValue = "follower")
+public class ReadOnlyReplicaInterceptor extends HandlerInterceptorAdapter {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if ("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod())) {
+            return true;
+        }
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "This instance is a read-only replica, send changes to the primary.");
+        return false;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.db.awmd.challenge.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+@Configuration
+public class WebConfiguration extends WebMvcConfigurerAdapter {
+
+    private final EndpointMetricsInterceptor endpointMetricsInterceptor;
+
+    private final long asyncTimeoutMillis;
+
+    @Autowired(required = false)
+    private ReadOnlyReplicaInterceptor readOnlyReplicaInterceptor;
+
+    @Autowired
+    public WebConfiguration(EndpointMetricsInterceptor endpointMetricsInterceptor,
+                            @Value("${accounts.async.timeout-ms:30000}") long asyncTimeoutMillis) {
+        this.endpointMetricsInterceptor = endpointMetricsInterceptor;
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(endpointMetricsInterceptor);
+        if (readOnlyReplicaInterceptor != null) {
+            registry.addInterceptor(readOnlyReplicaInterceptor);
+        }
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncTimeoutMillis);
+    }
+
+}
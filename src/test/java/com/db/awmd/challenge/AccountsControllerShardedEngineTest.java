@@ -0,0 +1,81 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AdmissionControl;
+import java.math.BigDecimal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.engine.type=sharded", "accounts.admission.max-in-flight=1",
+        "accounts.admission.retry-after-seconds=7"})
+@WebAppConfiguration
+public class AccountsControllerShardedEngineTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private AdmissionControl admissionControl;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+
+    accountsService.clearAccounts();
+  }
+
+  @Test
+  public void makeTransferAsyncOverInFlightLimit() throws Exception {
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("50")));
+
+    final AdmissionControl.Permit held = admissionControl.admit();
+    MvcResult refused = makeTransferAsyncWithContent("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60}");
+    this.mockMvc.perform(asyncDispatch(refused))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", "7"));
+    held.close();
+
+    MvcResult completed = makeTransferAsyncWithContent("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60}");
+    this.mockMvc.perform(asyncDispatch(completed)).andExpect(status().isOk());
+    // the shard's permit is returned once the transfer is applied
+    admissionControl.admit().close();
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("40");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("110");
+  }
+
+  private MvcResult makeTransferAsyncWithContent(String content) throws Exception {
+    return this.mockMvc.perform(
+            put("/v1/accounts/transfer/async")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(content))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+  }
+
+}
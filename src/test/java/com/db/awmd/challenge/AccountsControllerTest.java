@@ -1,16 +1,25 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.repository.TransferLedger;
+import com.db.awmd.challenge.repository.TransferLedgerTest;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.IdempotencyCache;
 import java.math.BigDecimal;
+import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,6 +29,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.web.context.WebApplicationContext;
 
@@ -36,12 +46,15 @@ public class AccountsControllerTest {
   @Autowired
   private WebApplicationContext webApplicationContext;
 
+  @Autowired
+  private TransferLedger transferLedger;
+
   @Before
   public void prepareMockMvc() {
     this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
 
     // Reset the existing accounts before each test.
-    accountsService.getAccountsRepository().clearAccounts();
+    accountsService.clearAccounts();
   }
 
   @Test
@@ -93,6 +106,64 @@ public class AccountsControllerTest {
             .content(content));
   }
 
+  @Test
+  public void getAccountsByIds() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":50}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(get("/v1/accounts?ids=Id-2,Id-unknown,Id-1"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("[{\"accountId\":\"Id-2\",\"balance\":50},{\"accountId\":\"Id-1\",\"balance\":100}]"));
+  }
+
+  @Test
+  public void exportAccounts() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100.25}").andExpect(status().isCreated());
+
+    assertThat(exportContent("/v1/accounts/export")).isEqualTo("accountId,balance\nId-1,100.25\n");
+    assertThat(exportContent("/v1/accounts/export?format=ndjson"))
+            .isEqualTo("{\"accountId\":\"Id-1\",\"balance\":100.25}\n");
+  }
+
+  private String exportContent(String url) throws Exception {
+    MvcResult export = this.mockMvc.perform(get(url))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    // the body streams into the first dispatch's response, which asyncDispatch does not carry over
+    export.getAsyncResult();
+    assertThat(export.getResponse().getStatus()).isEqualTo(200);
+    return export.getResponse().getContentAsString();
+  }
+
+  @Test
+  public void scheduleTransferWithoutExecuteAt() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":0}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/scheduled").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"transfer\":{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":10}}"))
+            .andExpect(status().isBadRequest());
+    this.mockMvc.perform(post("/v1/accounts/transfers/scheduled").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"transfer\":{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":10},"
+                    + "\"executeAt\":-5}"))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void importAccounts() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("application/x-ndjson")
+            .content("{\"accountId\":\"Id-1\",\"balance\":100}\n"
+                    + "{\"accountId\":\"Id-2\",\"balance\":0.5}\n"
+                    + "{\"accountId\":\"Id-1\",\"balance\":100}\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imported").value(2))
+            .andExpect(jsonPath("$.rejected").value(1))
+            .andExpect(jsonPath("$.errors[0].line").value(3));
+
+    verifyAccountBalance("Id-1", new BigDecimal("100"));
+    verifyAccountBalance("Id-2", new BigDecimal("0.5"));
+  }
+
   @Test
   public void getAccount() throws Exception {
     String uniqueAccountId = "Id-" + System.currentTimeMillis();
@@ -192,6 +263,182 @@ public class AccountsControllerTest {
     verifyAccountBalance("Id-2", new BigDecimal("11000"));
   }
 
+  @Test
+  public void makeTransfersBatch() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":50}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(put("/v1/accounts/transfers/batch").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"transfers\":["
+                    + "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60},"
+                    + "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60},"
+                    + "{\"accountFromId\":\"Id-2\",\"accountToId\":\"Id-3\",\"balance\":10},"
+                    + "{\"accountFromId\":\"Id-2\",\"accountToId\":\"Id-1\",\"balance\":110}]}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+            .andExpect(jsonPath("$[1].status").value("NOT_ENOUGH_BALANCE"))
+            .andExpect(jsonPath("$[2].status").value("ACCOUNT_NOT_FOUND"))
+            .andExpect(jsonPath("$[3].status").value("COMPLETED"));
+
+    verifyAccountBalance("Id-1", new BigDecimal("150"));
+    verifyAccountBalance("Id-2", new BigDecimal("0"));
+  }
+
+  @Test
+  public void makeTransfersEmptyBatch() throws Exception {
+    this.mockMvc.perform(put("/v1/accounts/transfers/batch").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"transfers\":[]}"))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void makeMultiLegTransfer() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":0}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-3\",\"balance\":0}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(put("/v1/accounts/transfers/multi-leg").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"legs\":["
+                    + "{\"accountId\":\"Id-1\",\"amount\":-90},"
+                    + "{\"accountId\":\"Id-2\",\"amount\":60},"
+                    + "{\"accountId\":\"Id-3\",\"amount\":30}]}"))
+            .andExpect(status().isOk());
+
+    verifyAccountBalance("Id-1", new BigDecimal("10"));
+    verifyAccountBalance("Id-2", new BigDecimal("60"));
+    verifyAccountBalance("Id-3", new BigDecimal("30"));
+  }
+
+  @Test
+  public void makeMultiLegTransferUnbalanced() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":0}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(put("/v1/accounts/transfers/multi-leg").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"legs\":[{\"accountId\":\"Id-1\",\"amount\":-90},{\"accountId\":\"Id-2\",\"amount\":80}]}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Legs of a multi-leg transfer must sum to zero, but sum to -10."));
+
+    verifyAccountBalance("Id-1", new BigDecimal("100"));
+  }
+
+  @Test
+  public void makeMultiLegTransferOverdraftAppliesNoLeg() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":10}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-3\",\"balance\":0}").andExpect(status().isCreated());
+
+    this.mockMvc.perform(put("/v1/accounts/transfers/multi-leg").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"legs\":["
+                    + "{\"accountId\":\"Id-1\",\"amount\":-50},"
+                    + "{\"accountId\":\"Id-2\",\"amount\":-20},"
+                    + "{\"accountId\":\"Id-3\",\"amount\":70}]}"))
+            .andExpect(status().isUnprocessableEntity());
+
+    verifyAccountBalance("Id-1", new BigDecimal("100"));
+    verifyAccountBalance("Id-2", new BigDecimal("10"));
+    verifyAccountBalance("Id-3", new BigDecimal("0"));
+  }
+
+  @Test
+  public void makeTransferRetriedWithIdempotencyKey() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":50}").andExpect(status().isCreated());
+    final String idempotencyKey = UUID.randomUUID().toString();
+
+    makeTransferWithKey(idempotencyKey, "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60}")
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(IdempotencyCache.REPLAYED_HEADER));
+    makeTransferWithKey(idempotencyKey, "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60}")
+            .andExpect(status().isOk())
+            .andExpect(header().string(IdempotencyCache.REPLAYED_HEADER, "true"));
+    makeTransferWithKey(idempotencyKey, "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":30}")
+            .andExpect(status().isUnprocessableEntity());
+
+    verifyAccountBalance("Id-1", new BigDecimal("40"));
+    verifyAccountBalance("Id-2", new BigDecimal("110"));
+  }
+
+  @Test
+  public void makeTransferRetriedWithIdempotencyKeyReplaysRejection() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":10}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":50}").andExpect(status().isCreated());
+    final String idempotencyKey = UUID.randomUUID().toString();
+
+    makeTransferWithKey(idempotencyKey, "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":20}")
+            .andExpect(status().isUnprocessableEntity());
+    accountsService.makeTransfer(new Transfer("Id-2", "Id-1", new BigDecimal("20")));
+
+    makeTransferWithKey(idempotencyKey, "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":20}")
+            .andExpect(status().isUnprocessableEntity())
+            .andExpect(header().string(IdempotencyCache.REPLAYED_HEADER, "true"));
+    verifyAccountBalance("Id-1", new BigDecimal("30"));
+  }
+
+  @Test
+  public void getTransfersPagesThroughHistory() throws Exception {
+    final String accountFromId = UUID.randomUUID().toString();
+    final String accountToId = UUID.randomUUID().toString();
+    this.accountsService.createAccount(new Account(accountFromId, new BigDecimal("100")));
+    this.accountsService.createAccount(new Account(accountToId, new BigDecimal("0")));
+    this.accountsService.makeTransfer(new Transfer(accountFromId, accountToId, new BigDecimal("10")));
+    this.accountsService.makeTransfer(new Transfer(accountFromId, accountToId, new BigDecimal("20")));
+    TransferLedgerTest.awaitEntries(this.transferLedger, accountFromId, 2);
+
+    this.mockMvc.perform(get("/v1/accounts/" + accountFromId + "/transfers?limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.entries[0].counterpartyId").value(accountToId))
+            .andExpect(jsonPath("$.entries[0].amount").value(-20))
+            .andExpect(jsonPath("$.nextCursor").value(1));
+    this.mockMvc.perform(get("/v1/accounts/" + accountFromId + "/transfers?limit=1&cursor=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.entries[0].amount").value(-10))
+            .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    this.mockMvc.perform(get("/v1/accounts/" + accountToId + "/transfers"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.entries.length()").value(2));
+
+    this.mockMvc.perform(get("/v1/accounts/" + accountFromId + "/transfers?limit=0"))
+            .andExpect(status().isBadRequest());
+    this.mockMvc.perform(get("/v1/accounts/Id-unknown/transfers"))
+            .andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void makeTransferAsync() throws Exception {
+    createAccountWithContent("{\"accountId\":\"Id-1\",\"balance\":100}").andExpect(status().isCreated());
+    createAccountWithContent("{\"accountId\":\"Id-2\",\"balance\":50}").andExpect(status().isCreated());
+
+    MvcResult completed = makeTransferAsyncWithContent("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60}");
+    this.mockMvc.perform(asyncDispatch(completed)).andExpect(status().isOk());
+
+    MvcResult overdraft = makeTransferAsyncWithContent("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"balance\":60}");
+    this.mockMvc.perform(asyncDispatch(overdraft)).andExpect(status().isUnprocessableEntity());
+
+    MvcResult notFound = makeTransferAsyncWithContent("{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-3\",\"balance\":10}");
+    this.mockMvc.perform(asyncDispatch(notFound)).andExpect(status().isNotFound());
+
+    verifyAccountBalance("Id-1", new BigDecimal("40"));
+    verifyAccountBalance("Id-2", new BigDecimal("110"));
+  }
+
+  private MvcResult makeTransferAsyncWithContent(String content) throws Exception {
+    return this.mockMvc.perform(
+            put("/v1/accounts/transfer/async")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(content))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+  }
+
+  private ResultActions makeTransferWithKey(String idempotencyKey, String content) throws Exception {
+    return this.mockMvc.perform(
+            put("/v1/accounts/transfer")
+                    .header("Idempotency-Key", idempotencyKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(content));
+  }
+
 
 
 
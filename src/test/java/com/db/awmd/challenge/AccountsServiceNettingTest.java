@@ -0,0 +1,112 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.netting.enabled=true", "accounts.netting.window-micros=200000"})
+public class AccountsServiceNettingTest {
+
+    @Autowired
+    private AccountsService accountsService;
+
+    @SpyBean
+    private AccountsRepository accountsRepository;
+
+    @Captor
+    private ArgumentCaptor<List<AccountUpdate>> updates;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void makeTransfer_should_netTransfersOfOneWindow() {
+        final String accountA = createAccount("100");
+        final String accountB = createAccount("50");
+
+        // the outcome of each transfer does not depend on the order the window runs them in
+        final CompletableFuture<Void> aToB = transferAsync(accountA, accountB, "60");
+        final CompletableFuture<Void> bToA = transferAsync(accountB, accountA, "30");
+        final CompletableFuture<Void> overdraft = transferAsync(accountA, accountB, "150");
+
+        aToB.join();
+        bToA.join();
+        try {
+            overdraft.join();
+            fail("Transfer beyond the balance should be refused");
+        } catch (CompletionException ce) {
+            assertThat(ce.getCause()).isInstanceOf(NotEnoughBalanceException.class);
+        }
+
+        assertThat(accountsService.getAccount(accountA).getBalance()).isEqualTo(new BigDecimal("70"));
+        assertThat(accountsService.getAccount(accountB).getBalance()).isEqualTo(new BigDecimal("80"));
+        assertOneUpdatePerAccount(accountA, accountB);
+    }
+
+    @Test
+    public void makeTransfers_should_validateAgainstRunningBalances() {
+        final String accountA = createAccount("100");
+        final String accountB = createAccount("50");
+
+        final List<TransferResult> results = accountsService.makeTransfers(Arrays.asList(
+                new Transfer(accountA, accountB, new BigDecimal("60")),
+                new Transfer(accountB, accountA, new BigDecimal("30")),
+                new Transfer(accountA, accountB, new BigDecimal("80"))));
+
+        assertThat(results).extracting(TransferResult::getStatus).containsExactly(
+                TransferStatus.COMPLETED, TransferStatus.COMPLETED, TransferStatus.NOT_ENOUGH_BALANCE);
+        assertThat(accountsService.getAccount(accountA).getBalance()).isEqualTo(new BigDecimal("70"));
+        assertThat(accountsService.getAccount(accountB).getBalance()).isEqualTo(new BigDecimal("80"));
+        assertOneUpdatePerAccount(accountA, accountB);
+    }
+
+    private String createAccount(String balance) {
+        final String accountId = UUID.randomUUID().toString();
+        accountsService.createAccount(new Account(accountId, new BigDecimal(balance)));
+        return accountId;
+    }
+
+    private CompletableFuture<Void> transferAsync(String accountFromId, String accountToId, String amount) {
+        return CompletableFuture.runAsync(() ->
+                accountsService.makeTransfer(new Transfer(accountFromId, accountToId, new BigDecimal(amount))));
+    }
+
+    private void assertOneUpdatePerAccount(String accountA, String accountB) {
+        verify(accountsRepository, times(1)).updateAccounts(updates.capture());
+        assertThat(updates.getValue()).extracting(AccountUpdate::getAccountId)
+                .containsExactlyInAnyOrder(accountA, accountB);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.db.awmd.challenge.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void snapshot_should_reportPercentilesCountersAndGauges() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final LatencyRecorder timer = registry.timer("test.timer");
+        for (int i = 1; i <= 1000; i++) {
+            timer.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        registry.counter("test.counter").add(3);
+        registry.gauge("test.gauge", () -> 42);
+
+        final Map<String, Object> snapshot = registry.snapshot();
+        final Map<String, Object> timerValues =
+                (Map<String, Object>) ((Map<String, Object>) snapshot.get("timers")).get("test.timer");
+        assertThat(timerValues.get("count")).isEqualTo(1000L);
+        assertThat((Long) timerValues.get("p50")).isBetween(495L, 505L);
+        assertThat((Long) timerValues.get("p99")).isBetween(985L, 995L);
+        assertThat((Long) timerValues.get("max")).isBetween(995L, 1001L);
+        assertThat(((Map<String, Object>) snapshot.get("counters")).get("test.counter")).isEqualTo(3L);
+        assertThat(((Map<String, Object>) snapshot.get("gauges")).get("test.gauge")).isEqualTo(42L);
+    }
+
+    @Test
+    public void timer_should_beSharedByName() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        assertThat(registry.timer("a")).isSameAs(registry.timer("a"));
+        assertThat(registry.counter("b")).isSameAs(registry.counter("b"));
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.repository;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountDictionaryTest {
+
+    private final AccountDictionary accountDictionary = new AccountDictionary();
+
+    @Test
+    public void register_should_assignDenseHandlesOnce() {
+        assertThat(accountDictionary.register("Id-1")).isEqualTo(0);
+        assertThat(accountDictionary.register("Id-2")).isEqualTo(1);
+        assertThat(accountDictionary.register("Id-1")).isEqualTo(0);
+
+        assertThat(accountDictionary.handleOf("Id-2")).isEqualTo(1);
+        assertThat(accountDictionary.handleOf("Id-3")).isEqualTo(AccountDictionary.UNKNOWN);
+        assertThat(accountDictionary.accountIdOf(1)).isEqualTo("Id-2");
+        assertThat(accountDictionary.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void register_should_mapHandlesBackAcrossChunksUnderConcurrency() {
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> registerRange(0, 100000)),
+                CompletableFuture.runAsync(() -> registerRange(50000, 150000))
+        ).join();
+
+        assertThat(accountDictionary.size()).isEqualTo(150000);
+        for (int i = 0; i < 150000; i++) {
+            assertThat(accountDictionary.accountIdOf(accountDictionary.handleOf("Id-" + i))).isEqualTo("Id-" + i);
+        }
+    }
+
+    private void registerRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            accountDictionary.register("Id-" + i);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AccountsRepositoryFixedPointTest {
+
+    private AccountsRepositoryFixedPoint accountsRepository;
+
+    @Before
+    public void setUp() {
+        accountsRepository = new AccountsRepositoryFixedPoint(2);
+    }
+
+    @Test
+    public void updateAccounts_should_applyDeltasInMinorUnits() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("10.50")));
+
+        accountsRepository.updateAccounts(Arrays.asList(new AccountUpdate("Id-1", new BigDecimal("-0.25"))));
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("10.25"));
+    }
+
+    @Test
+    public void transfer_should_failWhenNotEnoughFunds() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1.00")));
+        accountsRepository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+        try {
+            accountsRepository.transfer("Id-1", "Id-2", new BigDecimal("1.01"));
+            fail("Not enough funds");
+        } catch (NotEnoughBalanceException nbe) {
+            assertThat(nbe.getMessage()).isEqualTo("Not enough balance in account Id-1 balance=1.00");
+        }
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("0.00"));
+    }
+
+    @Test(expected = InvalidAmountException.class)
+    public void transfer_should_rejectAmountsBeyondScale() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1.00")));
+        accountsRepository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+        accountsRepository.transfer("Id-1", "Id-2", new BigDecimal("0.001"));
+    }
+
+    @Test
+    public void credits_should_beRefusedWhenTheBalanceWouldOverflow() throws Exception {
+        final BigDecimal nearlyFull = BigDecimal.valueOf(Long.MAX_VALUE - 25, 2);
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1.00")));
+        accountsRepository.createAccount(new Account("Id-2", nearlyFull));
+        accountsRepository.createAccount(new Account("Id-3", BigDecimal.ZERO));
+
+        try {
+            accountsRepository.transfer("Id-1", "Id-2", new BigDecimal("0.26"));
+            fail("Credit beyond the range of the balance");
+        } catch (InvalidAmountException iae) {
+            assertThat(iae.getMessage()).isEqualTo("Balance of account Id-2 cannot exceed 92233720368547758.07.");
+        }
+        try {
+            accountsRepository.transfer(Arrays.asList(
+                    new AccountUpdate("Id-1", new BigDecimal("-1.00")),
+                    new AccountUpdate("Id-3", new BigDecimal("0.50")),
+                    new AccountUpdate("Id-2", new BigDecimal("0.50"))));
+            fail("Credit beyond the range of the balance");
+        } catch (InvalidAmountException expected) {
+        }
+        try {
+            accountsRepository.updateAccounts(Arrays.asList(
+                    new AccountUpdate("Id-1", new BigDecimal("-0.50")),
+                    new AccountUpdate("Id-2", new BigDecimal("0.50"))));
+            fail("Credit beyond the range of the balance");
+        } catch (InvalidAmountException expected) {
+        }
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("1.00"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(nearlyFull);
+        assertThat(accountsRepository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal("0.00"));
+
+        accountsRepository.transfer("Id-1", "Id-2", new BigDecimal("0.25"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(BigDecimal.valueOf(Long.MAX_VALUE, 2));
+    }
+
+    @Test
+    public void concurrentTransfers_should_conserveTotalBalance() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1000.00")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("1000.00")));
+
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> transferRepeatedly("Id-1", "Id-2")),
+                CompletableFuture.runAsync(() -> transferRepeatedly("Id-2", "Id-1"))
+        ).join();
+
+        BigDecimal total = accountsRepository.getAccount("Id-1").getBalance()
+                .add(accountsRepository.getAccount("Id-2").getBalance());
+        assertThat(total).isEqualTo(new BigDecimal("2000.00"));
+    }
+
+    private void transferRepeatedly(String accountFromId, String accountToId) {
+        for (int i = 0; i < 10000; i++) {
+            try {
+                accountsRepository.transfer(accountFromId, accountToId, new BigDecimal("0.01"));
+            } catch (NotEnoughBalanceException ignored) {
+                // the other direction will refill the account
+            }
+        }
+    }
+
+}
@@ -6,18 +6,41 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class AccountsRepositoryInMemoryTest {
 
+    private AccountDictionary accountDictionary;
+
     private AccountsRepository accountsRepository;
 
     @Before
     public void setUp(){
-        accountsRepository = new AccountsRepositoryInMemory();
+        accountDictionary = new AccountDictionary();
+        accountsRepository = new AccountsRepositoryInMemory(accountDictionary);
+    }
+
+    @Test
+    public void getAccount_should_readByTheHandleRegisteredAtCreation() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("10")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("20")));
+        final int handle = accountDictionary.handleOf("Id-2");
+
+        assertThat(accountsRepository.getAccount(handle, "Id-2").getBalance()).isEqualTo(new BigDecimal("20"));
+        assertThat(accountsRepository.getAccount(AccountDictionary.UNKNOWN, "Id-3")).isNull();
+
+        accountsRepository.clearAccounts();
+        assertThat(accountsRepository.getAccount(handle, "Id-2")).isNull();
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("5")));
+        assertThat(accountDictionary.handleOf("Id-2")).isEqualTo(handle);
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("5"));
     }
 
     @Test
@@ -36,6 +59,84 @@ public class AccountsRepositoryInMemoryTest {
         assertBalance("Id000-ravi-2", new BigDecimal("400.00"));
     }
 
+    @Test
+    public void updateAccountsBatch_should_sumRepeatedUpdatesOfLargeBatch() throws Exception {
+        final List<AccountUpdate> accountUpdates = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("100")));
+            accountUpdates.add(new AccountUpdate("Id-" + i, BigDecimal.ONE.negate()));
+            accountUpdates.add(new AccountUpdate("Id-" + (i / 10), BigDecimal.ONE));
+        }
+
+        accountsRepository.updateAccounts(accountUpdates);
+        assertBalance("Id-0", new BigDecimal("109"));
+        assertBalance("Id-9", new BigDecimal("109"));
+        assertBalance("Id-10", new BigDecimal("99"));
+        assertBalance("Id-99", new BigDecimal("99"));
+    }
+
+    @Test
+    public void exportAccounts_should_reportBalancesAsOfExportStart() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("50")));
+        accountsRepository.createAccount(new Account("Id-3", new BigDecimal("10")));
+
+        final Map<String, BigDecimal> exported = new HashMap<>();
+        accountsRepository.exportAccounts(account -> {
+            if (exported.isEmpty()) {
+                // changes made while the export runs must not show up in it
+                accountsRepository.updateAccounts(Arrays.asList(
+                        new AccountUpdate("Id-1", new BigDecimal("-30")),
+                        new AccountUpdate("Id-2", new BigDecimal("30"))));
+                accountsRepository.updateAccounts(Arrays.asList(
+                        new AccountUpdate("Id-2", new BigDecimal("-70")),
+                        new AccountUpdate("Id-3", new BigDecimal("70"))));
+                accountsRepository.createAccount(new Account("Id-4", new BigDecimal("1")));
+            }
+            exported.put(account.getAccountId(), account.getBalance());
+        });
+
+        assertThat(exported).hasSize(3)
+                .containsEntry("Id-1", new BigDecimal("100"))
+                .containsEntry("Id-2", new BigDecimal("50"))
+                .containsEntry("Id-3", new BigDecimal("10"));
+        assertBalance("Id-1", new BigDecimal("70"));
+        assertBalance("Id-2", new BigDecimal("10"));
+        assertBalance("Id-3", new BigDecimal("80"));
+    }
+
+    @Test
+    public void getAccount_should_returnCopyOfCommittedBalance() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+
+        accountsRepository.getAccount("Id-1").setBalance(BigDecimal.ZERO);
+
+        assertBalance("Id-1", new BigDecimal("100"));
+    }
+
+    @Test
+    public void getAccounts_should_neverObserveHalfOfAnUpdate() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1000")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("1000")));
+
+        final CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 20000; i++) {
+                accountsRepository.updateAccounts(Arrays.asList(
+                        new AccountUpdate("Id-1", BigDecimal.ONE.negate()),
+                        new AccountUpdate("Id-2", BigDecimal.ONE)));
+            }
+        });
+        while (!writer.isDone()) {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Account account : accountsRepository.getAccounts(Arrays.asList("Id-1", "Id-2"))) {
+                total = total.add(account.getBalance());
+            }
+            assertThat(total).isEqualTo(new BigDecimal("2000"));
+        }
+        writer.join();
+        assertBalance("Id-2", new BigDecimal("21000"));
+    }
+
     private void assertBalance(String accountId, BigDecimal balance){
         assertThat(accountsRepository.getAccount(accountId).getBalance()).isEqualTo(balance);
     }
@@ -0,0 +1,120 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountException;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AccountsRepositoryOffHeapTest {
+
+    private AccountsRepositoryOffHeap accountsRepository;
+
+    @Before
+    public void setUp() {
+        accountsRepository = new AccountsRepositoryOffHeap(4, 64, 2);
+    }
+
+    @Test
+    public void createAccount_should_growPastInitialCapacity() throws Exception {
+        for (int i = 0; i < 10000; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+        }
+
+        assertThat(accountsRepository.getAccount("Id-0").getBalance()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(accountsRepository.getAccount("Id-9999").getBalance()).isEqualTo(new BigDecimal("9999.00"));
+        assertThat(accountsRepository.getAccount("Id-10000")).isNull();
+    }
+
+    @Test(expected = DuplicateAccountException.class)
+    public void createAccount_should_rejectDuplicateId() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", BigDecimal.ONE));
+        accountsRepository.createAccount(new Account("Id-1", BigDecimal.TEN));
+    }
+
+    @Test
+    public void updateAccounts_should_applyDeltasInMinorUnits() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("10.50")));
+
+        accountsRepository.updateAccounts(Arrays.asList(new AccountUpdate("Id-1", new BigDecimal("-0.25"))));
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("10.25"));
+    }
+
+    @Test
+    public void transfer_should_failWhenNotEnoughFunds() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1.00")));
+        accountsRepository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+        try {
+            accountsRepository.transfer("Id-1", "Id-2", new BigDecimal("1.01"));
+            fail("Not enough funds");
+        } catch (NotEnoughBalanceException nbe) {
+            assertThat(nbe.getMessage()).isEqualTo("Not enough balance in account Id-1 balance=1.00");
+        }
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("0.00"));
+    }
+
+    @Test(expected = AccountNotFoundException.class)
+    public void transfer_should_failForUnknownAccount() throws Exception {
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1.00")));
+
+        accountsRepository.transfer("Id-1", "Id-2", new BigDecimal("0.50"));
+    }
+
+    @Test
+    public void exportAccounts_should_streamEveryAccount() throws Exception {
+        for (int i = 0; i < 3000; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+        }
+
+        List<Account> exported = new ArrayList<>();
+        accountsRepository.exportAccounts(exported::add);
+
+        assertThat(exported).hasSize(3000);
+        assertThat(exported).contains(new Account("Id-1234"));
+        assertThat(exported).extracting("balance").containsOnly(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void concurrentTransfers_should_conserveTotalBalance() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000.00")));
+        }
+
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> transferRepeatedly(0)),
+                CompletableFuture.runAsync(() -> transferRepeatedly(3)),
+                CompletableFuture.runAsync(() -> transferRepeatedly(5))
+        ).join();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < 8; i++) {
+            total = total.add(accountsRepository.getAccount("Id-" + i).getBalance());
+        }
+        assertThat(total).isEqualTo(new BigDecimal("8000.00"));
+    }
+
+    private void transferRepeatedly(int offset) {
+        for (int i = 0; i < 10000; i++) {
+            try {
+                accountsRepository.transfer("Id-" + ((i + offset) % 8), "Id-" + ((i + offset + 1) % 8),
+                        new BigDecimal("0.01"));
+            } catch (NotEnoughBalanceException ignored) {
+                // the other direction will refill the account
+            }
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountsSnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransactionJournal journal;
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void recover_should_loadSnapshotAndReplayJournalTail() throws Exception {
+        AccountsRepositoryInMemory accountsRepository = openRepository();
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("100")));
+        transfer(accountsRepository, "Id-1", "Id-2", new BigDecimal("10"));
+        accountsRepository.snapshot();
+        transfer(accountsRepository, "Id-2", "Id-1", new BigDecimal("35"));
+        accountsRepository.createAccount(new Account("Id-3", new BigDecimal("7")));
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        assertThat(files("snapshots")).hasSize(1);
+        accountsRepository = openRepository();
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("125"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("75"));
+        assertThat(accountsRepository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal("7"));
+    }
+
+    @Test
+    public void snapshot_should_beConsistentWhileTransfersAreRunning() throws Exception {
+        final AccountsRepositoryInMemory accountsRepository = openRepository();
+        for (int i = 0; i < 10; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000")));
+        }
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<Void> transfers = CompletableFuture.runAsync(() -> {
+            for (int i = 0; running.get(); i++) {
+                transfer(accountsRepository, "Id-" + (i % 10), "Id-" + ((i + 1) % 10), BigDecimal.ONE);
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            accountsRepository.snapshot();
+        }
+        running.set(false);
+        transfers.join();
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        assertThat(files("snapshots")).hasSize(2);
+        AccountsRepositoryInMemory recovered = openRepository();
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < 10; i++) {
+            assertThat(recovered.getAccount("Id-" + i).getBalance())
+                    .isEqualTo(accountsRepository.getAccount("Id-" + i).getBalance());
+            total = total.add(recovered.getAccount("Id-" + i).getBalance());
+        }
+        assertThat(total).isEqualTo(new BigDecimal("10000"));
+    }
+
+    @Test
+    public void recover_should_fallBackToOlderSnapshotWhenNewestIsCorrupted() throws Exception {
+        AccountsRepositoryInMemory accountsRepository = openRepository();
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("100")));
+        accountsRepository.snapshot();
+        transfer(accountsRepository, "Id-1", "Id-2", new BigDecimal("60"));
+        accountsRepository.snapshot();
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        List<Path> snapshots = files("snapshots");
+        try (RandomAccessFile file = new RandomAccessFile(snapshots.get(1).toFile(), "rw")) {
+            file.seek(20);
+            file.writeByte(0x7F);
+        }
+
+        accountsRepository = openRepository();
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("40"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("160"));
+    }
+
+    private AccountsRepositoryInMemory openRepository() {
+        journal = new TransactionJournal(folder.getRoot().toPath().resolve("journal"), 4096, 100, 16);
+        AccountsSnapshotStore snapshotStore = new AccountsSnapshotStore(folder.getRoot().toPath().resolve("snapshots"), 2);
+        AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory(journal, snapshotStore);
+        accountsRepository.recover();
+        return accountsRepository;
+    }
+
+    private void transfer(AccountsRepository accountsRepository, String accountFromId, String accountToId, BigDecimal amount) {
+        synchronized (accountsRepository) {
+            accountsRepository.updateAccounts(Arrays.asList(
+                    new AccountUpdate(accountFromId, amount.negate()),
+                    new AccountUpdate(accountToId, amount)));
+        }
+    }
+
+    private List<Path> files(String directory) throws Exception {
+        return Files.list(folder.getRoot().toPath().resolve(directory)).sorted().collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.db.awmd.challenge.repository;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BalanceVersionsTest {
+
+    private final BalanceVersions versions = new BalanceVersions();
+
+    @Test
+    public void visibleAt_should_hideVersionsUntilTheirCommitIsPublished() {
+        final BalanceVersions.Chain chain = create("Id-1", "10");
+        final long before = versions.readTimestamp();
+
+        final BalanceVersions.Commit commit = versions.begin();
+        versions.install(chain, new BigDecimal("20"), commit);
+        assertThat(versions.visibleAt(chain, versions.readTimestamp()).balance).isEqualTo(new BigDecimal("10"));
+
+        versions.publish(commit);
+        assertThat(versions.visibleAt(chain, versions.readTimestamp()).balance).isEqualTo(new BigDecimal("20"));
+        assertThat(versions.visibleAt(chain, before).balance).isEqualTo(new BigDecimal("10"));
+        assertThat(versions.visibleAt(chain, before - 1)).isNull();
+    }
+
+    @Test
+    public void install_should_keepVersionsOfOpenSnapshots() {
+        final BalanceVersions.Chain chain = create("Id-1", "10");
+        final long snapshot = versions.openSnapshot();
+        final long unregistered = versions.readTimestamp();
+
+        update(chain, "20");
+        update(chain, "30");
+        assertThat(versions.visibleAt(chain, snapshot).balance).isEqualTo(new BigDecimal("10"));
+
+        versions.closeSnapshot(snapshot);
+        update(chain, "40");
+        assertThat(versions.visibleAt(chain, unregistered)).isSameAs(BalanceVersions.TRUNCATED);
+    }
+
+    private BalanceVersions.Chain create(String accountId, String balance) {
+        final BalanceVersions.Commit commit = versions.begin();
+        final BalanceVersions.Chain chain = versions.create(accountId, new BigDecimal(balance), commit);
+        versions.publish(commit);
+        return chain;
+    }
+
+    private void update(BalanceVersions.Chain chain, String balance) {
+        final BalanceVersions.Commit commit = versions.begin();
+        versions.install(chain, new BigDecimal(balance), commit);
+        versions.publish(commit);
+    }
+
+}
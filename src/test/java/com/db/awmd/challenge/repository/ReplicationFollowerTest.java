@@ -0,0 +1,122 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.LockManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicationFollowerTest {
+
+    private AccountsRepositoryInMemory primaryRepository;
+
+    private AccountsRepositoryInMemory followerRepository;
+
+    private AccountDictionary followerDictionary;
+
+    private ReplicationPrimary primary;
+
+    private ReplicationFollower follower;
+
+    @Before
+    public void setUp() throws Exception {
+        primaryRepository = new AccountsRepositoryInMemory();
+        followerDictionary = new AccountDictionary();
+        followerRepository = new AccountsRepositoryInMemory(followerDictionary);
+        primary = new ReplicationPrimary(primaryRepository, 0, 1024, 64);
+        primary.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (follower != null) {
+            follower.stop();
+        }
+        primary.stop();
+    }
+
+    @Test
+    public void follower_should_receiveExistingAccountsAndLaterChanges() throws Exception {
+        primaryRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        primaryRepository.createAccount(new Account("Id-2", new BigDecimal("50")));
+        startFollower();
+        awaitUntil(() -> followerRepository.getAccount("Id-2") != null);
+
+        primaryRepository.updateAccounts(Arrays.asList(
+                new AccountUpdate("Id-1", new BigDecimal("-30")),
+                new AccountUpdate("Id-2", new BigDecimal("30"))));
+        primaryRepository.createAccount(new Account("Id-3", new BigDecimal("7")));
+
+        awaitUntil(() -> followerRepository.getAccount("Id-3") != null);
+        assertThat(followerRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("70"));
+        assertThat(followerRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("80"));
+        assertThat(followerRepository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal("7"));
+    }
+
+    @Test
+    public void follower_should_resynchronizeAfterReconnecting() throws Exception {
+        primaryRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        startFollower();
+        awaitUntil(() -> followerRepository.getAccount("Id-1") != null);
+
+        follower.stop();
+        primaryRepository.updateAccounts(Arrays.asList(new AccountUpdate("Id-1", new BigDecimal("-40"))));
+        primaryRepository.createAccount(new Account("Id-2", new BigDecimal("1")));
+        followerRepository.createAccount(new Account("Stale", BigDecimal.ZERO));
+        startFollower();
+
+        awaitUntil(() -> followerRepository.getAccount("Id-2") != null);
+        assertThat(followerRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("60"));
+        assertThat(followerRepository.getAccount("Stale")).isNull();
+    }
+
+    @Test
+    public void follower_should_serveReplicatedAccountsThroughTheService() throws Exception {
+        primaryRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+        startFollower();
+        primaryRepository.createAccount(new Account("Id-2", new BigDecimal("50")));
+        final AccountsService followerService = new AccountsService(followerRepository, null,
+                new LockManager(64, 100, new MetricsRegistry(), followerDictionary), null, followerDictionary);
+
+        awaitUntil(() -> followerService.getAccount("Id-2") != null);
+        assertThat(followerService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("100"));
+        assertThat(followerService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("50"));
+    }
+
+    @Test
+    public void follower_should_receiveIdsLongerThan64KiBInUtf8() throws Exception {
+        final StringBuilder longId = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            longId.append('\u20ac');
+        }
+        primaryRepository.createAccount(new Account(longId.toString(), new BigDecimal("12.5")));
+        startFollower();
+
+        awaitUntil(() -> followerRepository.getAccount(longId.toString()) != null);
+        assertThat(followerRepository.getAccount(longId.toString()).getBalance()).isEqualTo(new BigDecimal("12.5"));
+    }
+
+    private void startFollower() {
+        follower = new ReplicationFollower(followerRepository, followerDictionary, "localhost", primary.getPort(), 50);
+        follower.start();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountUpdate;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransactionJournal journal;
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void recover_should_restoreCreatedAndUpdatedAccounts() throws Exception {
+        AccountsRepository accountsRepository = openRepository(1 << 20);
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("5")));
+        transfer(accountsRepository, "Id-1", "Id-2", new BigDecimal("30.50"));
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        accountsRepository = openRepository(1 << 20);
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("69.50"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("35.50"));
+    }
+
+    @Test
+    public void recover_should_followRolledSegments() throws Exception {
+        AccountsRepository accountsRepository = openRepository(256);
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("1000")));
+        accountsRepository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+        for (int i = 0; i < 100; i++) {
+            transfer(accountsRepository, "Id-1", "Id-2", BigDecimal.ONE);
+        }
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        assertThat(segments().size()).isGreaterThan(1);
+        accountsRepository = openRepository(256);
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("900"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("100"));
+    }
+
+    @Test
+    public void recover_should_discardTornRecordAtTheTail() throws Exception {
+        AccountsRepository accountsRepository = openRepository(1 << 20);
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal("10")));
+        accountsRepository.createAccount(new Account("Id-2", new BigDecimal("20")));
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int firstRecordLength = file.readInt();
+            file.seek(firstRecordLength + 20);
+            file.writeByte(0x7F);
+        }
+
+        accountsRepository = openRepository(1 << 20);
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("10"));
+        assertThat(accountsRepository.getAccount("Id-2")).isNull();
+
+        accountsRepository.createAccount(new Account("Id-3", new BigDecimal("30")));
+        accountsRepository.awaitDurability();
+        journal.close();
+
+        accountsRepository = openRepository(1 << 20);
+        assertThat(accountsRepository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal("30"));
+    }
+
+    private AccountsRepositoryInMemory openRepository(int segmentSize) {
+        journal = new TransactionJournal(folder.getRoot().toPath(), segmentSize, 100, 16);
+        AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory(journal, null);
+        accountsRepository.recover();
+        return accountsRepository;
+    }
+
+    private void transfer(AccountsRepository accountsRepository, String accountFromId, String accountToId, BigDecimal amount) {
+        accountsRepository.updateAccounts(Arrays.asList(
+                new AccountUpdate(accountFromId, amount.negate()),
+                new AccountUpdate(accountToId, amount)));
+    }
+
+    private List<Path> segments() throws Exception {
+        return Files.list(folder.getRoot().toPath()).sorted().collect(Collectors.toList());
+    }
+
+}
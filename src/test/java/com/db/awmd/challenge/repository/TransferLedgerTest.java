@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.LedgerPage;
+import com.db.awmd.challenge.domain.Transfer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TransferLedgerTest {
+
+    private final TransferLedger ledger = new TransferLedger(new AccountDictionary(), 16, 4);
+
+    @Before
+    public void setUp() {
+        ledger.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ledger.stop();
+    }
+
+    @Test
+    public void page_should_returnBothSidesNewestFirst() throws Exception {
+        ledger.record(new Transfer("Id-1", "Id-2", new BigDecimal("10.50")));
+        ledger.record(new Transfer("Id-2", "Id-3", new BigDecimal("3")));
+        awaitEntries(ledger, "Id-2", 2);
+
+        final LedgerPage page = ledger.page("Id-2", null, 10);
+        assertThat(page.getNextCursor()).isNull();
+        assertThat(page.getEntries()).hasSize(2);
+
+        final LedgerEntry newest = page.getEntries().get(0);
+        assertThat(newest.getCounterpartyId()).isEqualTo("Id-3");
+        assertThat(newest.getAmount()).isEqualTo(new BigDecimal("-3"));
+        final LedgerEntry oldest = page.getEntries().get(1);
+        assertThat(oldest.getCounterpartyId()).isEqualTo("Id-1");
+        assertThat(oldest.getAmount()).isEqualTo(new BigDecimal("10.50"));
+        assertThat(oldest.getTransferId()).isLessThan(newest.getTransferId());
+
+        assertThat(ledger.page("Id-1", null, 10).getEntries().get(0).getAmount()).isEqualTo(new BigDecimal("-10.50"));
+        assertThat(ledger.page("Id-unknown", null, 10).getEntries()).isEmpty();
+    }
+
+    @Test
+    public void page_should_continueFromCursorAcrossChunks() throws Exception {
+        final int transfers = 2500;
+        for (int i = 1; i <= transfers; i++) {
+            ledger.record(new Transfer("Id-1", "Id-2", new BigDecimal(i)));
+        }
+        awaitEntries(ledger, "Id-1", transfers);
+
+        Long cursor = null;
+        int expected = transfers;
+        int pages = 0;
+        do {
+            final LedgerPage page = ledger.page("Id-1", cursor, 1000);
+            for (LedgerEntry entry : page.getEntries()) {
+                assertThat(entry.getAmount()).isEqualTo(new BigDecimal(-expected--));
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(expected).isZero();
+        assertThat(pages).isEqualTo(3);
+    }
+
+    @Test
+    public void page_should_keepAmountsBeyondLongPrecision() throws Exception {
+        final BigDecimal amount = new BigDecimal("123456789012345678901234567890.12");
+        ledger.record(new Transfer("Id-1", "Id-2", amount));
+        awaitEntries(ledger, "Id-2", 1);
+
+        assertThat(ledger.page("Id-2", null, 1).getEntries().get(0).getAmount()).isEqualTo(amount);
+    }
+
+    @Test
+    public void clear_should_dropHistoryRecordedBeforeIt() throws Exception {
+        for (int i = 1; i <= 100; i++) {
+            ledger.record(new Transfer("Id-1", "Id-2", new BigDecimal(i)));
+        }
+        ledger.clear();
+        assertThat(ledger.page("Id-1", null, 10).getEntries()).isEmpty();
+
+        ledger.record(new Transfer("Id-2", "Id-1", new BigDecimal("7")));
+        awaitEntries(ledger, "Id-1", 1);
+
+        final LedgerPage page = ledger.page("Id-1", null, 10);
+        assertThat(page.getEntries()).extracting(LedgerEntry::getAmount).containsExactly(new BigDecimal("7"));
+        assertThat(ledger.page("Id-2", null, 10).getEntries()).hasSize(1);
+    }
+
+    /**
+     * Polls the account's history until it holds {@code entries} entries, failing after five seconds.
+     */
+    public static void awaitEntries(TransferLedger ledger, String accountId, int entries) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ledger.page(accountId, null, entries).getEntries().size() < entries) {
+            if (System.nanoTime() > deadline) {
+                fail("Ledger of " + accountId + " did not reach " + entries + " entries");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.repository.AccountDictionary;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryFixedPoint;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountsImporterTest {
+
+    private final AccountDictionary accountDictionary = new AccountDictionary();
+
+    private final AccountsRepository accountsRepository = new AccountsRepositoryInMemory(accountDictionary);
+
+    private final AccountsImporter importer =
+            new AccountsImporter(new AccountsService(accountsRepository, null, null, null, accountDictionary), 2, 3, 64);
+
+    @Test
+    public void importAccounts_should_createAccountsInChunksAndReportRejectedLines() throws Exception {
+        final AccountImportResult result = importer.importAccounts(body(
+                "{\"accountId\":\"Id-1\",\"balance\":100.50}\n"
+                        + "{\"balance\":7,\"accountId\":\"Id-2\",\"currency\":{\"code\":\"EUR\"}}\n"
+                        + "\n"
+                        + "{\"accountId\":\"Id-1\",\"balance\":1}\n"
+                        + "{\"accountId\":\"Id-3\",\"balance\":-1}\n"
+                        + "{\"accountId\":\"Id-4\",\"balance\":\n"
+                        + "{\"accountId\":\"Id-5\",\"balance\":5}"));
+
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getRejected()).isEqualTo(3);
+        assertThat(result.getErrors()).extracting("line").containsExactly(4L, 5L, 6L);
+        assertThat(result.getErrors().get(0).getMessage())
+                .isEqualTo("Provided Account Id Id-1 is already exists into system.");
+        assertThat(result.getErrors().get(1).getMessage()).isEqualTo("Initial balance must be positive.");
+        assertThat(result.getErrors().get(2).getMessage()).startsWith("Malformed JSON");
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("100.50"));
+        assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("7"));
+        assertThat(accountsRepository.getAccount("Id-5").getBalance()).isEqualTo(new BigDecimal("5"));
+    }
+
+    @Test
+    public void importAccounts_should_capReportedErrors() throws Exception {
+        final AccountImportResult result = importer.importAccounts(body("[]\n[]\n[]\n[]\n[]\n"));
+
+        assertThat(result.getRejected()).isEqualTo(5);
+        assertThat(result.getErrors()).hasSize(3);
+        assertThat(result.getErrors().get(0).getMessage()).isEqualTo("Expected a JSON object.");
+    }
+
+    @Test
+    public void importAccounts_should_rejectBalancesTheRepositoryCannotRepresent() throws Exception {
+        final AccountsRepository fixedPoint = new AccountsRepositoryFixedPoint(2);
+        final AccountDictionary fixedPointDictionary = new AccountDictionary();
+        final AccountsImporter fixedPointImporter = new AccountsImporter(
+                new AccountsService(fixedPoint, null, null, null, fixedPointDictionary), 2, 3, 64);
+
+        final AccountImportResult result = fixedPointImporter.importAccounts(body(
+                "{\"accountId\":\"Id-1\",\"balance\":1.234}\n"
+                        + "{\"accountId\":\"Id-2\",\"balance\":2}\n"
+                        + "{\"accountId\":\"Id-3\",\"balance\":3}"));
+
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getErrors()).extracting("line").containsExactly(1L);
+        assertThat(result.getErrors().get(0).getMessage())
+                .isEqualTo("Amount 1.234 cannot be represented with 2 decimal places.");
+        assertThat(fixedPoint.getAccount("Id-1")).isNull();
+        assertThat(fixedPoint.getAccount("Id-3").getBalance()).isEqualByComparingTo("3");
+        // a refused account is not given a handle
+        assertThat(fixedPointDictionary.handleOf("Id-1")).isEqualTo(AccountDictionary.UNKNOWN);
+        assertThat(fixedPointDictionary.handleOf("Id-3")).isNotEqualTo(AccountDictionary.UNKNOWN);
+    }
+
+    @Test
+    public void importAccounts_should_skipOverlongLinesWithoutBufferingThem() throws Exception {
+        final StringBuilder overlong = new StringBuilder("{\"accountId\":\"Id-2\",\"balance\":1,\"note\":\"");
+        for (int i = 0; i < 200000; i++) {
+            overlong.append('x');
+        }
+        final AccountImportResult result = importer.importAccounts(body(
+                "{\"accountId\":\"Id-1\",\"balance\":1}\r\n"
+                        + overlong + "\"}\r\n"
+                        + "{\"accountId\":\"Id-3\",\"balance\":3}"));
+
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getErrors()).extracting("line").containsExactly(2L);
+        assertThat(result.getErrors().get(0).getMessage()).isEqualTo("Line exceeds 64 bytes.");
+        assertThat(accountsRepository.getAccount("Id-2")).isNull();
+        assertThat(accountsRepository.getAccount("Id-3").getBalance()).isEqualTo(new BigDecimal("3"));
+    }
+
+    private static ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
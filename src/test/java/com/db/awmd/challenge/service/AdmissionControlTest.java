@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AdmissionControlTest {
+
+    private MetricsRegistry metricsRegistry;
+
+    private LockManager lockManager;
+
+    @Before
+    public void setUp() {
+        metricsRegistry = new MetricsRegistry();
+        lockManager = new LockManager(64, 100, metricsRegistry);
+    }
+
+    @Test
+    public void admit_should_refuseTransfersBeyondPerAccountLimit() {
+        final AdmissionControl admissionControl = new AdmissionControl(lockManager, metricsRegistry, 0, 2, 3);
+
+        AdmissionControl.Permit first = admissionControl.admit(1, 2);
+        AdmissionControl.Permit second = admissionControl.admit(1, 3);
+        try {
+            admissionControl.admit(4, 1);
+            fail("A third transfer of account 1 should be refused.");
+        } catch (TooManyRequestsException tmre) {
+            assertThat(tmre.getRetryAfterSeconds()).isEqualTo(3);
+        }
+        // the refused transfer must not have counted against account 4
+        admissionControl.admit(4, 5).close();
+        admissionControl.admit(4, 6).close();
+
+        first.close();
+        admissionControl.admit(1, 4).close();
+        second.close();
+        assertThat(metricsRegistry.counter("admission.rejected.per-account").sum()).isEqualTo(1);
+    }
+
+    @Test
+    public void admit_should_refuseTransfersBeyondInFlightLimit() {
+        final AdmissionControl admissionControl = new AdmissionControl(lockManager, metricsRegistry, 2, 0, 1);
+
+        AdmissionControl.Permit first = admissionControl.admit(1, 2);
+        AdmissionControl.Permit second = admissionControl.admit(3, 4);
+        try {
+            admissionControl.admit(5, 6);
+            fail("A third transfer should be refused.");
+        } catch (TooManyRequestsException expected) {
+            // refused without waiting
+        }
+
+        first.close();
+        first.close();
+        admissionControl.admit(5, 6);
+        try {
+            admissionControl.admit(7, 8);
+            fail("Closing a permit twice must not let two transfers in.");
+        } catch (TooManyRequestsException expected) {
+            // only one permit was returned
+        }
+        second.close();
+        assertThat(metricsRegistry.counter("admission.rejected.in-flight").sum()).isEqualTo(2);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotAccountCreditsTest {
+
+    private final AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+
+    private final HotAccountCredits hotAccountCredits =
+            new HotAccountCredits(accountsRepository, new String[]{"Fees", " "}, 4, 2);
+
+    @Test
+    public void defers_should_onlyAcceptHotAccountsAndRepresentableAmounts() {
+        assertThat(hotAccountCredits.defers("Fees", new BigDecimal("0.01"))).isTrue();
+        assertThat(hotAccountCredits.defers("Fees", new BigDecimal("0.001"))).isFalse();
+        assertThat(hotAccountCredits.defers("Id-1", new BigDecimal("1"))).isFalse();
+
+        hotAccountCredits.markHot("Id-1");
+        assertThat(hotAccountCredits.defers("Id-1", new BigDecimal("1"))).isTrue();
+    }
+
+    @Test
+    public void fold_should_applyConcurrentCreditsToBalance() {
+        accountsRepository.createAccount(new Account("Fees", new BigDecimal("10.00")));
+
+        final List<CompletableFuture<Void>> creditors = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            creditors.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    hotAccountCredits.credit("Fees", new BigDecimal("0.25"));
+                }
+            }));
+        }
+        CompletableFuture.allOf(creditors.toArray(new CompletableFuture<?>[0])).join();
+        assertThat(accountsRepository.getAccount("Fees").getBalance()).isEqualByComparingTo("10.00");
+
+        hotAccountCredits.fold("Fees");
+        assertThat(accountsRepository.getAccount("Fees").getBalance()).isEqualByComparingTo("2010.00");
+
+        hotAccountCredits.fold("Fees");
+        assertThat(accountsRepository.getAccount("Fees").getBalance()).isEqualByComparingTo("2010.00");
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountDictionary;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("try")
+public class LockManagerTest {
+
+    @Test
+    public void stripeCount_should_beRoundedUpToPowerOfTwo() {
+        assertThat(new LockManager(1000, 100, new MetricsRegistry()).getStripeCount()).isEqualTo(1024);
+        assertThat(new LockManager(1, 100, new MetricsRegistry()).getStripeCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void stripeOf_should_useHandleOfRegisteredAccount() {
+        final AccountDictionary accountDictionary = new AccountDictionary();
+        final LockManager lockManager = new LockManager(4, 100, new MetricsRegistry(), accountDictionary);
+        for (int i = 0; i < 8; i++) {
+            accountDictionary.register("Id-" + i);
+        }
+
+        assertThat(lockManager.stripeOf("Id-5")).isEqualTo(1).isEqualTo(lockManager.stripeOf(5));
+        assertThat(lockManager.stripeOf("Id-6")).isEqualTo(2);
+    }
+
+    @Test
+    public void lockHandles_should_excludeOtherHoldersOfTheSameAccount() throws Exception {
+        final AccountDictionary accountDictionary = new AccountDictionary();
+        final LockManager lockManager = new LockManager(64, 50, new MetricsRegistry(), accountDictionary);
+        final int handle = accountDictionary.register("Id-1");
+
+        try (LockManager.Locks ignored = lockManager.lockHandles(handle, AccountDictionary.UNKNOWN)) {
+            CompletableFuture.runAsync(() -> {
+                try (LockManager.Locks other = lockManager.lock("Id-1")) {
+                    fail("Lock on Id-1 should not be granted while its handle is held.");
+                } catch (LockTimeoutException expected) {
+                    // the id resolves to the locked handle's stripe
+                }
+            }).join();
+        }
+    }
+
+    @Test
+    public void tryCommit_should_lockWhenVersionsAreUnchanged() throws Exception {
+        final LockManager lockManager = new LockManager(64, 50, new MetricsRegistry());
+        final LockManager.Versions versions = lockManager.readVersions(1, 2);
+
+        try (LockManager.Locks locks = versions.tryCommit()) {
+            assertThat(locks).isNotNull();
+            assertThat(lockManager.readVersions(2).validate()).isFalse();
+        }
+        assertThat(versions.validate()).isFalse();
+        assertThat(lockManager.readVersions(2).validate()).isTrue();
+    }
+
+    @Test
+    public void tryCommit_should_failAfterConcurrentWrite() throws Exception {
+        final LockManager lockManager = new LockManager(64, 50, new MetricsRegistry());
+        final LockManager.Versions versions = lockManager.readVersions(1, 2);
+
+        CompletableFuture.runAsync(() -> lockManager.lockHandles(2).close()).join();
+
+        assertThat(versions.validate()).isFalse();
+        assertThat(versions.tryCommit()).isNull();
+        try (LockManager.Locks locks = lockManager.lockHandles(1)) {
+            assertThat(locks).isNotNull();
+        }
+    }
+
+    @Test
+    public void lock_should_notDeadlockWhenAccountsAreLockedInOppositeOrder() {
+        final LockManager lockManager = new LockManager(64, 10000, new MetricsRegistry());
+
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> lockRepeatedly(lockManager, "Id-1", "Id-2")),
+                CompletableFuture.runAsync(() -> lockRepeatedly(lockManager, "Id-2", "Id-1"))
+        ).join();
+    }
+
+    @Test
+    public void lock_should_timeOutWhenAccountIsHeldByAnotherThread() throws Exception {
+        final LockManager lockManager = new LockManager(64, 50, new MetricsRegistry());
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> {
+            try (LockManager.Locks ignored = lockManager.lock("Id-1")) {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        locked.await();
+
+        try (LockManager.Locks ignored = lockManager.lock("Id-2", "Id-1")) {
+            fail("Lock on Id-1 should not be granted while it is held.");
+        } catch (LockTimeoutException lte) {
+            assertThat(lte.getMessage()).isEqualTo("Accounts are busy, could not lock them within 50 ms.");
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+
+        try (LockManager.Locks ignored = lockManager.lock("Id-2")) {
+            assertThat(ignored).isNotNull();
+        }
+    }
+
+    private void lockRepeatedly(LockManager lockManager, String first, String second) {
+        for (int i = 0; i < 10000; i++) {
+            try (LockManager.Locks ignored = lockManager.lock(first, second)) {
+                assertThat(ignored).isNotNull();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class NotificationDispatcherTest {
+
+    private final NotificationService notificationService = Mockito.mock(NotificationService.class);
+
+    private final Account accountFrom = new Account("Id-1");
+    private final Account accountTo = new Account("Id-2");
+    private final Transfer transfer = new Transfer("Id-1", "Id-2", new BigDecimal("10"));
+
+    private NotificationDispatcher dispatcher;
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void dispatch_should_notifyBothAccountOwners() {
+        dispatcher = new NotificationDispatcher(notificationService, 1, 16, 8,
+                NotificationDispatcher.OverflowPolicy.BLOCK, 16);
+        dispatcher.start();
+
+        dispatcher.dispatch(accountFrom, accountTo, transfer);
+
+        verify(notificationService, timeout(1000)).notifyAboutTransfer(accountFrom,
+                "Transfer for AccountId Id-2 is done with balance of 10");
+        verify(notificationService, timeout(1000)).notifyAboutTransfer(accountTo,
+                "Transfer from AccountId + Id-1has done with balance of 10 in your account.");
+    }
+
+    @Test
+    public void dispatch_should_dropOrSpillWhenQueueIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(notificationService).notifyAboutTransfer(any(Account.class), anyString());
+
+        dispatcher = new NotificationDispatcher(notificationService, 1, 1, 1,
+                NotificationDispatcher.OverflowPolicy.DROP, 16);
+        dispatcher.start();
+        dispatcher.dispatch(accountFrom, accountTo, transfer);
+        verify(notificationService, timeout(1000)).notifyAboutTransfer(any(Account.class), anyString());
+
+        dispatcher.dispatch(accountFrom, accountTo, transfer);
+        dispatcher.dispatch(accountFrom, accountTo, transfer);
+
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+        assertThat(dispatcher.getDropped()).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    public void dispatch_should_dropOnceTheSpillIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(notificationService).notifyAboutTransfer(any(Account.class), anyString());
+
+        dispatcher = new NotificationDispatcher(notificationService, 1, 1, 1,
+                NotificationDispatcher.OverflowPolicy.SPILL, 2);
+        dispatcher.start();
+        dispatcher.dispatch(accountFrom, accountTo, transfer);
+        verify(notificationService, timeout(1000)).notifyAboutTransfer(any(Account.class), anyString());
+
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(accountFrom, accountTo, transfer);
+        }
+
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+        assertThat(dispatcher.getSpillDepth()).isEqualTo(2);
+        assertThat(dispatcher.getSpilled()).isEqualTo(2);
+        assertThat(dispatcher.getDropped()).isEqualTo(1);
+
+        release.countDown();
+        verify(notificationService, timeout(1000).times(8)).notifyAboutTransfer(any(Account.class), anyString());
+        assertThat(dispatcher.getSpillDepth()).isZero();
+    }
+
+}
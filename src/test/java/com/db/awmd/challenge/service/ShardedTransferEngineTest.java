@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.NotEnoughBalanceException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShardedTransferEngineTest {
+
+    private static final int ACCOUNTS = 32;
+
+    private final AccountsRepository accountsRepository = new AccountsRepositoryInMemory();
+
+    private ShardedTransferEngine engine;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountsRepository.createAccount(new Account("Id-" + i, new BigDecimal("1000")));
+        }
+        engine = new ShardedTransferEngine(accountsRepository, new TransferValidationImpl(), new MetricsRegistry(), 4, 64);
+        engine.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        engine.stop();
+    }
+
+    @Test
+    public void transfer_should_moveBalanceWithinAndAcrossShards() {
+        final String[] sameShard = findPair(true);
+        final String[] crossShard = findPair(false);
+
+        engine.transfer(new Transfer(sameShard[0], sameShard[1], new BigDecimal("100")));
+        engine.transfer(new Transfer(crossShard[0], crossShard[1], new BigDecimal("250")));
+
+        assertThat(accountsRepository.getAccount("Id-0").getBalance()).isEqualByComparingTo("650");
+        assertThat(accountsRepository.getAccount(sameShard[1]).getBalance()).isEqualByComparingTo("1100");
+        assertThat(accountsRepository.getAccount(crossShard[1]).getBalance()).isEqualByComparingTo("1250");
+    }
+
+    @Test
+    public void transfer_should_rethrowRejectionFromShard() {
+        try {
+            engine.transfer(new Transfer("Id-0", "Id-1", new BigDecimal("1000.01")));
+            fail("Should have failed with not enough balance");
+        } catch (NotEnoughBalanceException nbe) {
+            assertThat(nbe.getMessage()).isEqualTo("Not enough balance in account Id-0 balance=1000");
+        }
+        try {
+            engine.transfer(new Transfer("Id-0", "Id-missing", new BigDecimal("1")));
+            fail("Should have failed with account not found");
+        } catch (AccountNotFoundException ane) {
+            assertThat(ane.getMessage()).isEqualTo("Account Id-missing not found.");
+        }
+    }
+
+    @Test
+    public void submit_should_conserveTotalBalanceUnderConcurrentTransfers() {
+        final List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            producers.add(CompletableFuture.runAsync(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final List<CompletableFuture<Void>> transfers = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) {
+                    final int from = random.nextInt(ACCOUNTS);
+                    final int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    transfers.add(engine.submit(new Transfer("Id-" + from, "Id-" + to, new BigDecimal(random.nextInt(1, 50)))));
+                }
+                for (CompletableFuture<Void> transfer : transfers) {
+                    transfer.handle((ignored, rejection) -> null).join();
+                }
+            }));
+        }
+        CompletableFuture.allOf(producers.toArray(new CompletableFuture<?>[0])).join();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            final BigDecimal balance = accountsRepository.getAccount("Id-" + i).getBalance();
+            assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(balance);
+        }
+        assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+    }
+
+    private String[] findPair(boolean sameShard) {
+        for (int i = 1; i < ACCOUNTS; i++) {
+            if ((engine.shardOf("Id-0") == engine.shardOf("Id-" + i)) == sameShard) {
+                return new String[]{"Id-0", "Id-" + i};
+            }
+        }
+        throw new IllegalStateException("No account pair found");
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    @Test
+    public void advanceTo_should_releaseEachValueAtItsDeadline() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(2, 100);
+        for (long deadline : new long[]{101, 103, 104, 117, 164, 356, 1123}) {
+            wheel.add(deadline, deadline);
+        }
+
+        final List<Long> due = new ArrayList<>();
+        for (long tick = 101; tick <= 1200; tick++) {
+            wheel.advanceTo(tick, due);
+            for (Long deadline : due) {
+                assertThat(deadline).isEqualTo(tick);
+            }
+            due.clear();
+        }
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void add_should_releasePastDeadlinesAtTheNextTick() {
+        final TimingWheel<String> wheel = new TimingWheel<>(8, 1000);
+        wheel.add("late", 10);
+
+        final List<String> due = new ArrayList<>();
+        wheel.advanceTo(1001, due);
+        assertThat(due).containsExactly("late");
+    }
+
+    @Test
+    public void remove_should_keepValueFromBeingReleased() {
+        final TimingWheel<String> wheel = new TimingWheel<>(8, 0);
+        final TimingWheel.Entry<String> cancelled = wheel.add("cancelled", 1L << 20);
+        wheel.add("kept", 1L << 20);
+
+        assertThat(wheel.remove(cancelled)).isTrue();
+        assertThat(wheel.remove(cancelled)).isFalse();
+
+        final List<String> due = new ArrayList<>();
+        wheel.advanceTo(1L << 20, due);
+        assertThat(due).containsExactly("kept");
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TransferNettingTest {
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    private TransferNetting transferNetting;
+
+    @After
+    public void tearDown() throws Exception {
+        transferNetting.stop();
+    }
+
+    @Test
+    public void submit_should_runTransfersOfOneWindowAsOneBatch() throws Exception {
+        transferNetting = new TransferNetting(metricsRegistry, 200000, 1000, 100);
+        final List<List<Transfer>> batches = new CopyOnWriteArrayList<>();
+        transferNetting.start(transfers -> {
+            batches.add(new ArrayList<>(transfers));
+            final List<TransferResult> results = new ArrayList<>();
+            for (Transfer transfer : transfers) {
+                results.add(transfer.getBalance().compareTo(BigDecimal.TEN) > 0
+                        ? TransferResult.rejected(transfer, TransferStatus.NOT_ENOUGH_BALANCE, "Not enough balance.")
+                        : TransferResult.completed(transfer));
+            }
+            return results;
+        });
+
+        final CompletableFuture<TransferResult> first = transferNetting.submit(transfer("Id-1", "Id-2", "10"));
+        final CompletableFuture<TransferResult> second = transferNetting.submit(transfer("Id-2", "Id-1", "11"));
+        final CompletableFuture<TransferResult> third = transferNetting.submit(transfer("Id-1", "Id-2", "1"));
+
+        assertThat(first.join().getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(second.join().getStatus()).isEqualTo(TransferStatus.NOT_ENOUGH_BALANCE);
+        assertThat(third.join().getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).hasSize(3);
+        assertThat(metricsRegistry.counter("transfers.netting.transfers").sum()).isEqualTo(3);
+    }
+
+    @Test
+    public void submit_should_failEveryTransferOfAFailedBatch() throws Exception {
+        transferNetting = new TransferNetting(metricsRegistry, 200000, 2, 100);
+        transferNetting.start(transfers -> {
+            throw new LockTimeoutException("Accounts are busy, could not lock them within 50 ms.");
+        });
+
+        final CompletableFuture<TransferResult> first = transferNetting.submit(transfer("Id-1", "Id-2", "1"));
+        final CompletableFuture<TransferResult> second = transferNetting.submit(transfer("Id-3", "Id-4", "1"));
+
+        for (CompletableFuture<TransferResult> result : Arrays.asList(first, second)) {
+            try {
+                result.join();
+                fail("The transfer should fail with its batch.");
+            } catch (CompletionException ce) {
+                assertThat(ce.getCause()).isInstanceOf(LockTimeoutException.class);
+            }
+        }
+    }
+
+    @Test
+    public void submit_should_refuseTransfersBeyondQueueCapacity() throws Exception {
+        transferNetting = new TransferNetting(metricsRegistry, 1000, 1, 1);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        transferNetting.start(transfers -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonList(TransferResult.completed(transfers.get(0)));
+        });
+
+        final CompletableFuture<TransferResult> first = transferNetting.submit(transfer("Id-1", "Id-2", "1"));
+        running.await();
+        final CompletableFuture<TransferResult> second = transferNetting.submit(transfer("Id-1", "Id-2", "1"));
+        try {
+            transferNetting.submit(transfer("Id-1", "Id-2", "1"));
+            fail("A transfer beyond the queue capacity should be refused.");
+        } catch (TooManyRequestsException expected) {
+            // refused without waiting
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(first.join().getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(second.join().getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(metricsRegistry.counter("transfers.netting.rejected").sum()).isEqualTo(1);
+    }
+
+    private static Transfer transfer(String accountFromId, String accountToId, String amount) {
+        return new Transfer(accountFromId, accountToId, new BigDecimal(amount));
+    }
+
+}
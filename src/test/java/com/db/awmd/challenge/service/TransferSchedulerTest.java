@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.LockTimeoutException;
+import com.db.awmd.challenge.exception.SameAccountTransferException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransferSchedulerTest {
+
+    private static final long START = 1_000_000;
+
+    private AccountsService accountsService;
+
+    private MetricsRegistry metricsRegistry;
+
+    private TransferScheduler transferScheduler;
+
+    @Before
+    public void setUp() {
+        accountsService = mock(AccountsService.class);
+        when(accountsService.makeTransfers(anyListOf(Transfer.class))).thenReturn(Collections.emptyList());
+        metricsRegistry = new MetricsRegistry();
+        transferScheduler = new TransferScheduler(accountsService, metricsRegistry, 10, 4, 2, START);
+    }
+
+    @Test
+    public void releaseDue_should_releaseDueTransfersInBatchesInExecutionOrder() {
+        final Transfer first = new Transfer("Id-1", "Id-2", BigDecimal.ONE);
+        final Transfer second = new Transfer("Id-2", "Id-3", BigDecimal.ONE);
+        final Transfer third = new Transfer("Id-3", "Id-1", BigDecimal.ONE);
+        final Transfer later = new Transfer("Id-1", "Id-3", BigDecimal.ONE);
+        transferScheduler.schedule(third, START + 3000);
+        transferScheduler.schedule(first, START + 1000);
+        transferScheduler.schedule(second, START + 2000);
+        transferScheduler.schedule(later, START + 60000);
+
+        transferScheduler.releaseDue(START + 2999);
+        verify(accountsService).makeTransfers(Arrays.asList(first, second));
+        verify(accountsService, never()).makeTransfers(Collections.singletonList(third));
+
+        transferScheduler.releaseDue(START + 3000);
+        verify(accountsService).makeTransfers(Collections.singletonList(third));
+        assertThat(transferScheduler.getScheduledTransfers(null, 10)).extracting(ScheduledTransfer::getTransfer)
+                .containsExactly(later);
+    }
+
+    @Test
+    public void cancel_should_keepTransferFromBeingReleased() {
+        final Transfer transfer = new Transfer("Id-1", "Id-2", BigDecimal.ONE);
+        final ScheduledTransfer scheduled = transferScheduler.schedule(transfer, START + 1000);
+
+        assertThat(transferScheduler.getScheduledTransfers("Id-2", 10)).containsExactly(scheduled);
+        assertThat(transferScheduler.cancel(scheduled.getId())).isEqualTo(scheduled);
+        assertThat(transferScheduler.cancel(scheduled.getId())).isNull();
+
+        transferScheduler.releaseDue(START + 5000);
+        verify(accountsService, never()).makeTransfers(anyListOf(Transfer.class));
+    }
+
+    @Test
+    public void getScheduledTransfers_should_returnEarliestOfTheAccount() {
+        final ScheduledTransfer third =
+                transferScheduler.schedule(new Transfer("Id-1", "Id-2", BigDecimal.ONE), START + 3000);
+        final ScheduledTransfer first =
+                transferScheduler.schedule(new Transfer("Id-3", "Id-1", BigDecimal.ONE), START + 1000);
+        transferScheduler.schedule(new Transfer("Id-2", "Id-3", BigDecimal.ONE), START + 500);
+        final ScheduledTransfer second =
+                transferScheduler.schedule(new Transfer("Id-1", "Id-3", BigDecimal.ONE), START + 2000);
+
+        assertThat(transferScheduler.getScheduledTransfers("Id-1", 2)).containsExactly(first, second);
+        assertThat(transferScheduler.getScheduledTransfers("Id-1", 10)).containsExactly(first, second, third);
+        assertThat(transferScheduler.getScheduledTransfers("Id-4", 10)).isEmpty();
+
+        transferScheduler.releaseDue(START + 1000);
+        assertThat(transferScheduler.getScheduledTransfers("Id-1", 10)).containsExactly(second, third);
+        assertThat(transferScheduler.getScheduledTransfers(null, 1)).containsExactly(second);
+    }
+
+    @Test
+    public void releaseDue_should_retryTransfersWhoseAccountsAreBusy() {
+        final Transfer transfer = new Transfer("Id-1", "Id-2", BigDecimal.ONE);
+        when(accountsService.makeTransfers(Collections.singletonList(transfer)))
+                .thenThrow(new LockTimeoutException("busy"))
+                .thenReturn(Collections.singletonList(TransferResult.completed(transfer)));
+        transferScheduler.schedule(transfer, START + 100);
+
+        transferScheduler.releaseDue(START + 100);
+        assertThat(transferScheduler.getPendingCount()).isEqualTo(1);
+
+        transferScheduler.releaseDue(START + 1100);
+        assertThat(transferScheduler.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void releaseDue_should_countTransfersOfAFailedBatch() {
+        final Transfer transfer = new Transfer("Id-1", "Id-2", BigDecimal.ONE);
+        when(accountsService.makeTransfers(Collections.singletonList(transfer)))
+                .thenThrow(new IllegalStateException("journal failed"));
+        transferScheduler.schedule(transfer, START + 100);
+
+        transferScheduler.releaseDue(START + 100);
+
+        assertThat(transferScheduler.getPendingCount()).isZero();
+        assertThat(metricsRegistry.counter("scheduled.failed").sum()).isEqualTo(1);
+    }
+
+    @Test
+    public void schedule_should_refuseTransferToSameAccount() {
+        try {
+            transferScheduler.schedule(new Transfer("Id-1", "Id-1", BigDecimal.ONE), START);
+            fail("Transfer to the same account should be refused.");
+        } catch (SameAccountTransferException expected) {
+            assertThat(transferScheduler.getPendingCount()).isZero();
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdempotencyCacheTest {
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    public void execute_should_runActionOncePerKey() {
+        final IdempotencyCache cache = new IdempotencyCache(new MetricsRegistry(), 100, 1, 60);
+
+        assertThat(cache.execute("key-1", "request", this::ok).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(cache.execute("key-1", "request", this::ok).getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER))
+                .isEqualTo("true");
+        assertThat(cache.execute("key-1", "other request", this::ok).getStatusCode())
+                .isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void execute_should_evictOldestEntriesBeyondMaxEntries() {
+        final IdempotencyCache cache = new IdempotencyCache(new MetricsRegistry(), 2, 1, 60);
+
+        cache.execute("key-1", "request", this::ok);
+        cache.execute("key-2", "request", this::ok);
+        cache.execute("key-3", "request", this::ok);
+        assertThat(cache.getSize()).isEqualTo(2);
+
+        cache.execute("key-1", "request", this::ok);
+        assertThat(executions.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void execute_should_forgetExpiredEntriesAndServerErrors() throws Exception {
+        final IdempotencyCache cache = new IdempotencyCache(new MetricsRegistry(), 100, 1, 0);
+        cache.execute("key-1", "request", this::ok);
+        Thread.sleep(1);
+        cache.execute("key-1", "request", this::ok);
+        assertThat(executions.get()).isEqualTo(2);
+
+        final IdempotencyCache retrying = new IdempotencyCache(new MetricsRegistry(), 100, 1, 60);
+        retrying.execute("key-1", "request", () -> new ResponseEntity<>("busy", HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(retrying.execute("key-1", "request", this::ok).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void execute_should_runRetryAfterTooManyRequests() {
+        final IdempotencyCache cache = new IdempotencyCache(new MetricsRegistry(), 100, 1, 60);
+
+        assertThat(cache.execute("key-1", "request", () -> {
+            executions.incrementAndGet();
+            return new ResponseEntity<>("busy", HttpStatus.TOO_MANY_REQUESTS);
+        }).getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        final ResponseEntity<Object> retried = cache.execute("key-1", "request", this::ok);
+
+        assertThat(retried.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retried.getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER)).isNull();
+        assertThat(executions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void execute_should_waitForConcurrentDuplicate() throws Exception {
+        final IdempotencyCache cache = new IdempotencyCache(new MetricsRegistry(), 100, 1, 60);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CompletableFuture<ResponseEntity<Object>> first = CompletableFuture.supplyAsync(() ->
+                cache.execute("key-1", "request", () -> {
+                    started.countDown();
+                    await(release);
+                    return ok();
+                }));
+        started.await();
+        final CompletableFuture<ResponseEntity<Object>> duplicate = CompletableFuture.supplyAsync(() ->
+                cache.execute("key-1", "request", this::ok));
+        release.countDown();
+
+        assertThat(first.join().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(duplicate.join().getHeaders().getFirst(IdempotencyCache.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    private ResponseEntity<Object> ok() {
+        executions.incrementAndGet();
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}